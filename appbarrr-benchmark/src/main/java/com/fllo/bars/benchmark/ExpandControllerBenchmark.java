@@ -0,0 +1,196 @@
+package com.fllo.bars.benchmark;
+
+import com.fllo.bars.core.ExpandController;
+import com.fllo.bars.core.ExpandSpring;
+import com.fllo.bars.core.ExpandTransition;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h2>ExpandControllerBenchmark</h2>
+ * <p>Measures the cost of the AppBarrr core: the per-frame height update of a
+ * transition, the sequencing of thousands of simulated transitions, run to
+ * their end or reversed halfway, and the spring settling a released drag</p>
+ *
+ * <p>The views are replaced by a host which records the heights of the appbar
+ * and the toolbar, moved by the {@link ExpandTransition} of the widget and
+ * counting its layout requests. Run with the gc profiler to see the
+ * allocations:</p>
+ * <pre>
+ * ./gradlew :appbarrr-benchmark:jmh
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ExpandControllerBenchmark {
+
+    /**
+     * Number of simulated transitions per invocation
+     */
+    private static final int TRANSITIONS = 1000;
+
+    /**
+     * Frames of a 300ms transition at 60fps
+     */
+    private static final int FRAMES = 18;
+
+    /**
+     * Nanoseconds of a frame at 60fps
+     */
+    private static final long FRAME_NANOS = 16666667L;
+
+    private SimulatedHost mHost;
+    private ExpandController mController;
+    private ExpandSpring mSpring;
+    private float mFraction;
+
+    @Setup
+    public void setup() {
+        mHost = new SimulatedHost();
+        mController = new ExpandController(mHost);
+        mController.getGeometry().setStartHeights(420, 168);
+        mController.getGeometry().setRequestedMaxSize(1350);
+        mController.show();
+        mSpring = new ExpandSpring();
+    }
+
+    @Benchmark
+    public void frame(Blackhole bh) {
+        mFraction += 1.f / FRAMES;
+        if (mFraction > 1.f) {
+            mFraction = 0.f;
+        }
+        bh.consume(mHost.frame(mFraction));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSITIONS)
+    public void transitions(Blackhole bh) {
+        for (int i = 0; i < TRANSITIONS; i++) {
+            if (mController.isExpanded()) {
+                mController.hide();
+            } else {
+                mController.show();
+            }
+            for (int f = 1; f <= FRAMES; f++) {
+                mController.onTransitionUpdate((float) f / FRAMES);
+                bh.consume(mHost.frame((float) f / FRAMES));
+            }
+            mController.onTransitionEnd();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSITIONS)
+    public void reversals(Blackhole bh) {
+        for (int i = 0; i < TRANSITIONS; i++) {
+            // each transition is reversed halfway
+            if (mController.isExpanded()) {
+                mController.hide();
+            } else {
+                mController.show();
+            }
+            for (int f = 1; f <= FRAMES / 2; f++) {
+                mController.onTransitionUpdate((float) f / FRAMES);
+                bh.consume(mHost.frame((float) f / FRAMES));
+            }
+        }
+    }
+
+    @Benchmark
+    public int settle() {
+        // a drag released halfway with a downward fling
+        mSpring.start(0.5f, 3.f, 1.f);
+        int frames = 0;
+        while (!mSpring.step(FRAME_NANOS)) {
+            frames++;
+        }
+        return frames;
+    }
+
+    /**
+     * Host which replaces the views by their heights
+     */
+    private static final class SimulatedHost implements ExpandController.Host,
+            ExpandTransition.Targets {
+
+        private final ExpandTransition mTransition = new ExpandTransition(2);
+
+        private int mAppBarHeight = 420;
+        private int mToolbarHeight = 168;
+        private int mLayoutRequests;
+
+        @Override
+        public int getParentHeight() {
+            return 1920;
+        }
+
+        @Override
+        public void onPrepareShowing() {
+        }
+
+        @Override
+        public void onPrepareHiding() {
+        }
+
+        @Override
+        public void onExpand(int maxHeight, long duration) {
+            mTransition.set(0, mAppBarHeight, maxHeight);
+            mTransition.set(1, mToolbarHeight, maxHeight);
+        }
+
+        @Override
+        public void onExpanded(int maxHeight) {
+            mTransition.set(0, maxHeight, maxHeight);
+            mTransition.set(1, maxHeight, maxHeight);
+        }
+
+        @Override
+        public void onCollapse(int appBarHeight, int toolbarHeight, long duration) {
+            mTransition.set(0, mAppBarHeight, appBarHeight);
+            mTransition.set(1, mToolbarHeight, toolbarHeight);
+        }
+
+        @Override
+        public void setHeight(int index, int height) {
+            if (index == 0) {
+                mAppBarHeight = height;
+            } else {
+                mToolbarHeight = height;
+            }
+        }
+
+        @Override
+        public void requestLayout() {
+            mLayoutRequests++;
+        }
+
+        /**
+         * Moves the views for a frame, as the timeline of the widget
+         *
+         * @param fraction Fraction of the transition
+         * @return Sum of the heights and the layout requests
+         */
+        int frame(float fraction) {
+            mTransition.apply(fraction, this);
+            return mAppBarHeight + mToolbarHeight + mLayoutRequests;
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package com.fllo.bars.core;
+
+/**
+ * <h2>ExpandController</h2>
+ * <p>The state of an AppBarrr and the sequencing of its showing and hiding,
+ * without any dependency on the Android framework</p>
+ *
+ * <p>The controller keeps the expanded state, the durations and the geometry,
+ * resolves the target heights and asks its {@link Host} to prepare the views
+ * and to animate them.</p>
+ *
+ * <p>The state goes from {@link #STATE_COLLAPSED} to {@link #STATE_EXPANDED}
+ * through {@link #STATE_EXPANDING}, and back through {@link #STATE_COLLAPSING}.
+ * The host reports the progress of the running transition, so a new command
+ * reverses it from its current progress, with the remaining part of the
+ * duration, instead of starting a new transition over the running one.</p>
+ *
+ * <p>The widget can also be dragged from its collapsed mode: the progress follows
+ * the finger, then the host settles it to the mode chosen on release.</p>
+ */
+public final class ExpandController {
+
+    /**
+     * The widget is collapsed
+     */
+    public static final int STATE_COLLAPSED = 0;
+
+    /**
+     * The widget is running a transition to the expanded mode
+     */
+    public static final int STATE_EXPANDING = 1;
+
+    /**
+     * The widget is expanded
+     */
+    public static final int STATE_EXPANDED = 2;
+
+    /**
+     * The widget is running a transition to the collapsed mode
+     */
+    public static final int STATE_COLLAPSING = 3;
+
+    /**
+     * Default duration of the animations
+     */
+    public static final long DEFAULT_DURATION = 300;
+
+    /**
+     * The views driven by the controller
+     */
+    public interface Host {
+        /**
+         * Gets the height of the parent container
+         *
+         * @return Height in pixels
+         */
+        int getParentHeight();
+
+        /**
+         * Prepares the expanded state elements, before expanding
+         */
+        void onPrepareShowing();
+
+        /**
+         * Prepares the collapsed state elements, before collapsing
+         */
+        void onPrepareHiding();
+
+        /**
+         * Animates the widgets to the expanded mode
+         *
+         * @param maxHeight Final height of the expanded widgets
+         * @param duration Milliseconds of the animation
+         */
+        void onExpand(int maxHeight, long duration);
+
+        /**
+         * Sets the widgets directly in expanded mode, without animation
+         *
+         * @param maxHeight Final height of the expanded widgets
+         */
+        void onExpanded(int maxHeight);
+
+        /**
+         * Animates the widgets to the collapsed mode
+         *
+         * @param appBarHeight Final height of the appbar
+         * @param toolbarHeight Final height of the toolbar
+         * @param duration Milliseconds of the animation
+         */
+        void onCollapse(int appBarHeight, int toolbarHeight, long duration);
+    }
+
+    private final Host mHost;
+
+    private final ExpandGeometry mGeometry = new ExpandGeometry();
+
+    /**
+     * Duration of expanding animation
+     */
+    private long mExpandDuration = DEFAULT_DURATION;
+
+    /**
+     * Duration of collapsing animation
+     */
+    private long mCollapseDuration = DEFAULT_DURATION;
+
+    /**
+     * Current state, collapsed by default
+     */
+    private int mState = STATE_COLLAPSED;
+
+    /**
+     * Progress of the widget, from 0 when collapsed to 1 when expanded
+     */
+    private float mProgress = 0.f;
+
+    /**
+     * Progress when the running transition started
+     */
+    private float mStartProgress = 0.f;
+
+    /**
+     * True while the widget follows a drag
+     */
+    private boolean mDragging = false;
+
+    /**
+     * Creates a controller
+     *
+     * @param host The views driven by the controller
+     */
+    public ExpandController(Host host) {
+        mHost = host;
+    }
+
+    /**
+     * Gets the geometry of the widget
+     *
+     * @return The geometry
+     */
+    public ExpandGeometry getGeometry() {
+        return mGeometry;
+    }
+
+    /**
+     * Sets the duration of expanding animation
+     *
+     * @param duration Milliseconds
+     */
+    public void setExpandDuration(long duration) {
+        mExpandDuration = duration;
+    }
+
+    /**
+     * Gets the duration of expanding animation
+     *
+     * @return Milliseconds
+     */
+    public long getExpandDuration() {
+        return mExpandDuration;
+    }
+
+    /**
+     * Sets the duration of collapsing animation
+     *
+     * @param duration Milliseconds
+     */
+    public void setCollapseDuration(long duration) {
+        mCollapseDuration = duration;
+    }
+
+    /**
+     * Gets the duration of collapsing animation
+     *
+     * @return Milliseconds
+     */
+    public long getCollapseDuration() {
+        return mCollapseDuration;
+    }
+
+    /**
+     * Gets the current state of expanded layout
+     *
+     * @return True if visible, false otherwise
+     */
+    public boolean isExpanded() {
+        return mState == STATE_EXPANDING || mState == STATE_EXPANDED;
+    }
+
+    /**
+     * Gets the current state
+     *
+     * @return One of the STATE constants
+     */
+    public int getState() {
+        return mState;
+    }
+
+    /**
+     * Returns true if a transition is running
+     *
+     * @return Boolean of the running state
+     */
+    public boolean isRunning() {
+        return mState == STATE_EXPANDING || mState == STATE_COLLAPSING;
+    }
+
+    /**
+     * Gets the progress of the widget
+     *
+     * @return Progress, from 0 when collapsed to 1 when expanded
+     */
+    public float getProgress() {
+        return mProgress;
+    }
+
+    /**
+     * Reports the fraction of the running transition, called
+     * by the host on each frame
+     *
+     * @param fraction Fraction of the transition, from 0 to 1
+     */
+    public void onTransitionUpdate(float fraction) {
+        float target = mState == STATE_COLLAPSING ? 0.f : 1.f;
+        mProgress = mStartProgress + (target - mStartProgress) * fraction;
+    }
+
+    /**
+     * Reports the end of the running transition, called by the host
+     * when the transition reaches its end or is finished directly
+     */
+    public void onTransitionEnd() {
+        if (mState == STATE_EXPANDING) {
+            mState = STATE_EXPANDED;
+            mProgress = 1.f;
+        } else if (mState == STATE_COLLAPSING) {
+            mState = STATE_COLLAPSED;
+            mProgress = 0.f;
+        }
+    }
+
+    /**
+     * Returns true while the widget follows a drag
+     *
+     * @return Boolean of the dragging state
+     */
+    public boolean isDragging() {
+        return mDragging;
+    }
+
+    /**
+     * Starts a drag from the collapsed mode and prepares
+     * the expanded state elements
+     *
+     * @return True if started, false if not collapsed
+     */
+    public boolean startDrag() {
+        if (mState != STATE_COLLAPSED)
+            return false;
+
+        mDragging = true;
+        mState = STATE_EXPANDING;
+        mHost.onPrepareShowing();
+        return true;
+    }
+
+    /**
+     * Sets the progress followed by the drag or by its settling
+     *
+     * @param progress Progress, from 0 when collapsed to 1 when expanded
+     */
+    public void setProgress(float progress) {
+        mProgress = Math.max(0.f, Math.min(1.f, progress));
+    }
+
+    /**
+     * Ends a drag, the host then settles the widget to the chosen
+     * mode and reports the end of the transition
+     *
+     * @param expand True to expand, false to collapse
+     */
+    public void endDrag(boolean expand) {
+        if (!mDragging)
+            return;
+
+        mDragging = false;
+        mStartProgress = mProgress;
+        if (!expand) {
+            mState = STATE_COLLAPSING;
+            mHost.onPrepareHiding();
+        }
+    }
+
+    /**
+     * Gets the max size of the expanded layout in the current parent
+     *
+     * @return Height in pixels
+     */
+    public int getExpandMaxSize() {
+        // read once, then updated by the host
+        if (!mGeometry.hasParentHeight()) {
+            mGeometry.setParentHeight(mHost.getParentHeight());
+        }
+        return mGeometry.getMaxSize();
+    }
+
+    /**
+     * Updates the geometry when the parent is resized, an expanded widget
+     * is set directly to the new max size and an expanding transition goes
+     * on to it. A drag is left to the host
+     *
+     * @param parentHeight New height of the parent container
+     * @return True if the geometry changed
+     */
+    public boolean onParentResized(int parentHeight) {
+        if (!mGeometry.setParentHeight(parentHeight))
+            return false;
+        if (!mGeometry.isMeasured())
+            return true;
+
+        int maxHeight = mGeometry.getMaxSize();
+        if (mState == STATE_EXPANDED) {
+            mHost.onExpanded(maxHeight);
+        } else if (mState == STATE_EXPANDING && !mDragging) {
+            mStartProgress = mProgress;
+            mHost.onExpand(maxHeight, scaleDuration(mExpandDuration, 1.f - mProgress));
+        }
+        return true;
+    }
+
+    /**
+     * Prepares and expands the widgets
+     *
+     * @return True if expanded, false if already expanded
+     */
+    public boolean show() {
+        if (isExpanded())
+            return false;
+
+        // save the current visible state, a running collapsing
+        // transition is reversed from its progress
+        mState = STATE_EXPANDING;
+        mStartProgress = mProgress;
+        mHost.onPrepareShowing();
+        mHost.onExpand(getExpandMaxSize(), scaleDuration(mExpandDuration, 1.f - mProgress));
+        return true;
+    }
+
+    /**
+     * Prepares and sets the widgets directly in expanded mode,
+     * after a configuration change
+     *
+     * @return True if expanded, false if already expanded
+     */
+    public boolean restore() {
+        if (isExpanded())
+            return false;
+
+        // no transition, the final state is applied at once
+        mDragging = false;
+        mState = STATE_EXPANDED;
+        mProgress = 1.f;
+        mHost.onPrepareShowing();
+        mHost.onExpanded(getExpandMaxSize());
+        return true;
+    }
+
+    /**
+     * Prepares and collapses the widgets
+     *
+     * @return True if collapsed, false if already collapsed
+     */
+    public boolean hide() {
+        if (!isExpanded())
+            return false;
+
+        // save the current visible state, a running expanding
+        // transition or a drag is reversed from its progress
+        mDragging = false;
+        mState = STATE_COLLAPSING;
+        mStartProgress = mProgress;
+        mHost.onPrepareHiding();
+        mHost.onCollapse(mGeometry.getAppBarStartHeight(),
+                mGeometry.getToolbarStartHeight(), scaleDuration(mCollapseDuration, mProgress));
+        return true;
+    }
+
+    /**
+     * Scales a duration to the remaining distance of a transition
+     *
+     * @param duration Milliseconds of a whole transition
+     * @param distance Remaining distance, from 0 to 1
+     * @return Milliseconds, at least 1
+     */
+    static long scaleDuration(long duration, float distance) {
+        return Math.max(1, Math.round(duration * distance));
+    }
+}
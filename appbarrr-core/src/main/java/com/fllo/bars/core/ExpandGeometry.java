@@ -0,0 +1,171 @@
+package com.fllo.bars.core;
+
+/**
+ * <h2>ExpandGeometry</h2>
+ * <p>The geometry of an AppBarrr: the initial heights of the bar and its toolbar,
+ * which are used to retrieve the starting states after an expanding animation,
+ * and the max size of the expanded layout</p>
+ *
+ * <p>Each widget owns its geometry, so several widgets can be alive at the
+ * same time (in ViewPager pages, kept screens...) without sharing heights.
+ * The heights are measured once and reused by all the animations, and the max
+ * size is resolved again only when the parent's height or an input changes.</p>
+ */
+public final class ExpandGeometry {
+
+    /**
+     * Initial AppBarLayout's height
+     */
+    private int mAppBarStartHeight;
+
+    /**
+     * Initial Toolbar's height
+     */
+    private int mToolbarStartHeight;
+
+    /**
+     * Max size height of expanded layout requested, 0 if not set
+     */
+    private int mRequestedMaxSize;
+
+    /**
+     * Last known height of the parent container, 0 if unknown
+     */
+    private int mParentHeight;
+
+    /**
+     * Max size of the expanded layout resolved in the parent
+     */
+    private int mMaxSize;
+
+    /**
+     * Sets the initial heights
+     *
+     * @param appBarHeight Initial height of the appbar
+     * @param toolbarHeight Initial height of the toolbar
+     */
+    public void setStartHeights(int appBarHeight, int toolbarHeight) {
+        mAppBarStartHeight = appBarHeight;
+        mToolbarStartHeight = toolbarHeight;
+        mMaxSize = resolveMaxSize(mParentHeight);
+    }
+
+    /**
+     * Returns true if the initial heights are known
+     *
+     * @return Boolean of the measured state
+     */
+    public boolean isMeasured() {
+        return mAppBarStartHeight > 0 && mToolbarStartHeight > 0;
+    }
+
+    /**
+     * Returns true if the initial toolbar's height is known, which
+     * can be before the appbar is measured
+     *
+     * @return Boolean of the toolbar state
+     */
+    public boolean hasToolbarStartHeight() {
+        return mToolbarStartHeight > 0;
+    }
+
+    /**
+     * Gets the initial appbar's height
+     *
+     * @return Height in pixels, 0 if not measured
+     */
+    public int getAppBarStartHeight() {
+        return mAppBarStartHeight;
+    }
+
+    /**
+     * Gets the initial toolbar's height
+     *
+     * @return Height in pixels, 0 if not measured
+     */
+    public int getToolbarStartHeight() {
+        return mToolbarStartHeight;
+    }
+
+    /**
+     * Sets the requested max size of the expanded layout
+     *
+     * @param maxSize Height in pixels, 0 for the default size
+     */
+    public void setRequestedMaxSize(int maxSize) {
+        mRequestedMaxSize = maxSize;
+        mMaxSize = resolveMaxSize(mParentHeight);
+    }
+
+    /**
+     * Gets the requested max size of the expanded layout
+     *
+     * @return Height in pixels, 0 if not set
+     */
+    public int getRequestedMaxSize() {
+        return mRequestedMaxSize;
+    }
+
+    /**
+     * Sets the height of the parent container and resolves
+     * the max size again if it changed
+     *
+     * @param parentHeight Height of the parent container, 0 if unknown
+     * @return True if the height changed
+     */
+    public boolean setParentHeight(int parentHeight) {
+        // an unknown height keeps the last known one, a parent not
+        // laid out yet doesn't make the max size negative
+        if (parentHeight <= 0 || parentHeight == mParentHeight)
+            return false;
+
+        mParentHeight = parentHeight;
+        mMaxSize = resolveMaxSize(parentHeight);
+        return true;
+    }
+
+    /**
+     * Returns true if the height of the parent container is known
+     *
+     * @return Boolean of the parent state
+     */
+    public boolean hasParentHeight() {
+        return mParentHeight > 0;
+    }
+
+    /**
+     * Gets the max size of the expanded layout resolved
+     * in the last known parent
+     *
+     * @return Height in pixels
+     */
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Resolves the max size of the expanded layout in a parent: the
+     * requested size, or a default size (the parent's height less the
+     * toolbar's height) if not set or larger than the parent
+     *
+     * @param parentHeight Height of the parent container, 0 if unknown
+     * @return The max size height of expanded layout, 0 if unknown
+     */
+    public int resolveMaxSize(int parentHeight) {
+        if (parentHeight <= 0)
+            return 0;
+        if (mRequestedMaxSize == 0 || mRequestedMaxSize > parentHeight) {
+            return Math.max(0, parentHeight - mToolbarStartHeight);
+        }
+        return mRequestedMaxSize;
+    }
+
+    /**
+     * Forgets the initial heights
+     */
+    public void reset() {
+        mAppBarStartHeight = 0;
+        mToolbarStartHeight = 0;
+        mMaxSize = resolveMaxSize(mParentHeight);
+    }
+}
@@ -0,0 +1,136 @@
+package com.fllo.bars.core;
+
+/**
+ * <h2>ExpandSpring</h2>
+ * <p>A critically damped spring which settles the progress of a dragged widget
+ * to its expanded or collapsed mode, starting with the velocity of the finger</p>
+ *
+ * <p>The progress goes from 0 when collapsed to 1 when expanded, and the velocity
+ * is in progress per second. The spring is stepped by the frame times and reused
+ * by all the gestures: a step allocates nothing.</p>
+ */
+public final class ExpandSpring {
+
+    /**
+     * Default stiffness of the spring, per squared second
+     */
+    public static final float DEFAULT_STIFFNESS = 400.f;
+
+    /**
+     * Velocity above which a release is a fling in its
+     * direction, in progress per second
+     */
+    public static final float FLING_VELOCITY = 1.f;
+
+    /**
+     * Longest integration step, keeps the spring stable
+     * when frames are dropped
+     */
+    private static final float MAX_STEP = 1.f / 240;
+
+    /**
+     * Longest frame taken into account, in seconds
+     */
+    private static final float MAX_FRAME = 1.f / 30;
+
+    /**
+     * Distance under which the spring is at rest
+     */
+    private static final float REST_DISTANCE = 0.001f;
+
+    /**
+     * Velocity under which the spring is at rest, in progress per second
+     */
+    private static final float REST_VELOCITY = 0.05f;
+
+    private float mStiffness = DEFAULT_STIFFNESS;
+    private float mDamping = 2.f * (float) Math.sqrt(DEFAULT_STIFFNESS);
+
+    private float mPosition;
+    private float mVelocity;
+    private float mTarget;
+
+    /**
+     * Sets the stiffness of the spring, the damping
+     * is set to keep the spring critically damped
+     *
+     * @param stiffness Stiffness per squared second
+     */
+    public void setStiffness(float stiffness) {
+        mStiffness = stiffness;
+        mDamping = 2.f * (float) Math.sqrt(stiffness);
+    }
+
+    /**
+     * Chooses the mode reached when a drag is released: a fling goes
+     * in its direction, a slow release goes to the nearest mode
+     *
+     * @param position Progress when released
+     * @param velocity Velocity when released, in progress per second
+     * @return True to expand, false to collapse
+     */
+    public static boolean shouldExpand(float position, float velocity) {
+        if (Math.abs(velocity) > FLING_VELOCITY) {
+            return velocity > 0;
+        }
+        return position >= 0.5f;
+    }
+
+    /**
+     * Starts settling from the given state
+     *
+     * @param position Starting progress
+     * @param velocity Starting velocity, in progress per second
+     * @param target Final progress
+     */
+    public void start(float position, float velocity, float target) {
+        mPosition = position;
+        mVelocity = velocity;
+        mTarget = target;
+    }
+
+    /**
+     * Moves the spring by the time elapsed since the last frame
+     *
+     * @param deltaNanos Nanoseconds since the last frame
+     * @return True if the spring is at rest on its target
+     */
+    public boolean step(long deltaNanos) {
+        float remaining = Math.min(deltaNanos / 1e9f, MAX_FRAME);
+        while (remaining > 0) {
+            float dt = Math.min(remaining, MAX_STEP);
+            // semi-implicit euler
+            float acceleration = mStiffness * (mTarget - mPosition) - mDamping * mVelocity;
+            mVelocity += acceleration * dt;
+            mPosition += mVelocity * dt;
+            remaining -= dt;
+        }
+
+        if (Math.abs(mTarget - mPosition) < REST_DISTANCE
+                && Math.abs(mVelocity) < REST_VELOCITY) {
+            mPosition = mTarget;
+            mVelocity = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the current progress, bounded to the collapsed
+     * and expanded modes
+     *
+     * @return Progress, from 0 to 1
+     */
+    public float getPosition() {
+        return Math.max(0.f, Math.min(1.f, mPosition));
+    }
+
+    /**
+     * Gets the final progress
+     *
+     * @return Progress, 0 or 1
+     */
+    public float getTarget() {
+        return mTarget;
+    }
+}
@@ -0,0 +1,98 @@
+package com.fllo.bars.core;
+
+/**
+ * <h2>ExpandTransition</h2>
+ * <p>The heights of the views moved by an expanding or collapsing transition,
+ * from their starting heights to their final heights</p>
+ *
+ * <p>A transition is created once for a fixed number of views and reused by
+ * all the animations: computing the heights of a frame allocates nothing. A frame
+ * is applied to its {@link Targets} with a single layout request.</p>
+ */
+public final class ExpandTransition {
+
+    /**
+     * The views moved by a transition
+     */
+    public interface Targets {
+        /**
+         * Sets the height of a view, without requesting a layout
+         *
+         * @param index Index of the view
+         * @param height Height in pixels
+         */
+        void setHeight(int index, int height);
+
+        /**
+         * Requests one layout for all the views
+         */
+        void requestLayout();
+    }
+
+    /**
+     * Starting heights of the views
+     */
+    private final int[] mFromHeights;
+
+    /**
+     * Final heights of the views
+     */
+    private final int[] mToHeights;
+
+    /**
+     * Creates a transition
+     *
+     * @param count Number of views moved by the transition
+     */
+    public ExpandTransition(int count) {
+        mFromHeights = new int[count];
+        mToHeights = new int[count];
+    }
+
+    /**
+     * Gets the number of views moved by the transition
+     *
+     * @return Number of views
+     */
+    public int getCount() {
+        return mFromHeights.length;
+    }
+
+    /**
+     * Sets the heights of a view
+     *
+     * @param index Index of the view
+     * @param fromHeight Starting height
+     * @param toHeight Final height
+     */
+    public void set(int index, int fromHeight, int toHeight) {
+        mFromHeights[index] = fromHeight;
+        mToHeights[index] = toHeight;
+    }
+
+    /**
+     * Computes the height of a view at a fraction of the transition
+     *
+     * @param index Index of the view
+     * @param fraction Fraction of the transition, from 0 to 1
+     * @return Height in pixels
+     */
+    public int heightAt(int index, float fraction) {
+        return mFromHeights[index]
+                + Math.round((mToHeights[index] - mFromHeights[index]) * fraction);
+    }
+
+    /**
+     * Sets the heights of all the views at a fraction of the transition,
+     * then requests one layout for the frame
+     *
+     * @param fraction Fraction of the transition, from 0 to 1
+     * @param targets The views moved by the transition
+     */
+    public void apply(float fraction, Targets targets) {
+        for (int i = 0; i < mFromHeights.length; i++) {
+            targets.setHeight(i, heightAt(i, fraction));
+        }
+        targets.requestLayout();
+    }
+}
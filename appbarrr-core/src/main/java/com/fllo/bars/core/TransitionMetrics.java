@@ -0,0 +1,122 @@
+package com.fllo.bars.core;
+
+/**
+ * <h2>TransitionMetrics</h2>
+ * <p>The frame timings of one expanding or collapsing transition of an
+ * AppBarrr, reported to its TransitionMetricsListener</p>
+ *
+ * <p>The frame times are the intervals between two consecutive frames while the
+ * transition runs: the first frame only starts the first interval, as its time
+ * is the vsync time of the display, not the time the transition started. A frame
+ * is dropped each time an interval spans more than one refresh period.</p>
+ */
+public final class TransitionMetrics {
+
+    private final boolean mExpanding;
+    private final int mFrameCount;
+    private final int mDroppedFrames;
+    private final long mMaxFrameTimeNanos;
+    private final long mP95FrameTimeNanos;
+    private final int mLayoutPasses;
+    private final long mDurationNanos;
+    private final long mConfiguredDuration;
+
+    TransitionMetrics(boolean expanding, int frameCount, int droppedFrames,
+                      long maxFrameTimeNanos, long p95FrameTimeNanos, int layoutPasses,
+                      long durationNanos, long configuredDuration) {
+        mExpanding = expanding;
+        mFrameCount = frameCount;
+        mDroppedFrames = droppedFrames;
+        mMaxFrameTimeNanos = maxFrameTimeNanos;
+        mP95FrameTimeNanos = p95FrameTimeNanos;
+        mLayoutPasses = layoutPasses;
+        mDurationNanos = durationNanos;
+        mConfiguredDuration = configuredDuration;
+    }
+
+    /**
+     * Returns true if the transition expanded the widget
+     *
+     * @return Boolean of the direction
+     */
+    public boolean isExpanding() {
+        return mExpanding;
+    }
+
+    /**
+     * Gets the number of frames drawn during the transition
+     *
+     * @return Number of frames
+     */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Gets the number of refresh periods missed during the transition
+     *
+     * @return Number of dropped frames
+     */
+    public int getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    /**
+     * Gets the longest frame time
+     *
+     * @return Nanoseconds of the longest frame
+     */
+    public long getMaxFrameTimeNanos() {
+        return mMaxFrameTimeNanos;
+    }
+
+    /**
+     * Gets the 95th percentile of the frame times
+     *
+     * @return Nanoseconds of the 95th percentile frame
+     */
+    public long getP95FrameTimeNanos() {
+        return mP95FrameTimeNanos;
+    }
+
+    /**
+     * Gets the number of layout passes of the widget during the transition
+     *
+     * @return Number of layout passes
+     */
+    public int getLayoutPasses() {
+        return mLayoutPasses;
+    }
+
+    /**
+     * Gets the measured duration of the transition
+     *
+     * @return Nanoseconds of the transition
+     */
+    public long getDurationNanos() {
+        return mDurationNanos;
+    }
+
+    /**
+     * Gets the duration set for the transition
+     *
+     * @return Milliseconds of the expanding or collapsing duration
+     */
+    public long getConfiguredDuration() {
+        return mConfiguredDuration;
+    }
+
+    @Override
+    public String toString() {
+        return "TransitionMetrics{"
+                + (mExpanding ? "expanding" : "collapsing")
+                + ", frames=" + mFrameCount
+                + ", dropped=" + mDroppedFrames
+                + ", maxFrameNs=" + mMaxFrameTimeNanos
+                + ", p95FrameNs=" + mP95FrameTimeNanos
+                + ", layouts=" + mLayoutPasses
+                + ", durationNs=" + mDurationNanos
+                + ", configuredMs=" + mConfiguredDuration
+                + "}";
+    }
+}
@@ -0,0 +1,159 @@
+package com.fllo.bars.core;
+
+import java.util.Arrays;
+
+/**
+ * <h2>TransitionMetricsRecorder</h2>
+ * <p>Records the frame timings of the transitions of an AppBarrr and
+ * builds their {@link TransitionMetrics}</p>
+ *
+ * <p>The recorder doesn't depend on the Android framework: the frame times are
+ * given by the caller and the start and end times are read from a {@link Clock},
+ * which can be replaced by a fake one. The frame times are only compared with
+ * each other, so the first frame starts the first interval. Its buffers are
+ * reused across the transitions.</p>
+ */
+public final class TransitionMetricsRecorder {
+
+    /**
+     * Source of the start and end times
+     */
+    public interface Clock {
+        /**
+         * Gets the current time
+         *
+         * @return Current time in nanoseconds
+         */
+        long nanoTime();
+    }
+
+    /**
+     * Clock of the system
+     */
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    private final Clock mClock;
+
+    /**
+     * Refresh period of the display
+     */
+    private final long mFrameIntervalNanos;
+
+    /**
+     * Frame times of the current transition
+     */
+    private long[] mFrameTimes = new long[32];
+
+    /**
+     * Frames of the current transition, one more than the frame times
+     */
+    private int mFrameCount;
+    private int mFrameTimeCount;
+    private int mDroppedFrames;
+    private int mLayoutPasses;
+    private long mStartNanos;
+    private long mLastFrameNanos;
+    private boolean mExpanding;
+    private long mConfiguredDuration;
+    private boolean mRecording;
+
+    /**
+     * Creates a recorder
+     *
+     * @param clock Source of the start and end times
+     * @param frameIntervalNanos Refresh period of the display
+     */
+    public TransitionMetricsRecorder(Clock clock, long frameIntervalNanos) {
+        mClock = clock;
+        mFrameIntervalNanos = frameIntervalNanos;
+    }
+
+    /**
+     * Starts recording a transition
+     *
+     * @param expanding True if the transition expands the widget
+     * @param configuredDuration Milliseconds set for the transition
+     */
+    public void begin(boolean expanding, long configuredDuration) {
+        mExpanding = expanding;
+        mConfiguredDuration = configuredDuration;
+        mFrameCount = 0;
+        mFrameTimeCount = 0;
+        mDroppedFrames = 0;
+        mLayoutPasses = 0;
+        mStartNanos = mClock.nanoTime();
+        mRecording = true;
+    }
+
+    /**
+     * Returns true if a transition is recorded
+     *
+     * @return Boolean of the recording state
+     */
+    public boolean isRecording() {
+        return mRecording;
+    }
+
+    /**
+     * Records a frame of the transition
+     *
+     * @param frameTimeNanos Vsync time of the frame
+     */
+    public void onFrame(long frameTimeNanos) {
+        if (!mRecording)
+            return;
+
+        // the vsync time is not in the time base of the clock,
+        // so the first frame only starts the first interval
+        long frameTime = frameTimeNanos - mLastFrameNanos;
+        mLastFrameNanos = frameTimeNanos;
+        if (mFrameCount++ == 0)
+            return;
+
+        if (mFrameTimeCount == mFrameTimes.length) {
+            mFrameTimes = Arrays.copyOf(mFrameTimes, mFrameTimeCount * 2);
+        }
+        mFrameTimes[mFrameTimeCount++] = frameTime;
+
+        // each missed refresh period is a dropped frame
+        if (mFrameIntervalNanos > 0 && frameTime > mFrameIntervalNanos) {
+            mDroppedFrames += (int) ((frameTime + mFrameIntervalNanos / 2)
+                    / mFrameIntervalNanos) - 1;
+        }
+    }
+
+    /**
+     * Records a layout pass of the widget
+     */
+    public void onLayout() {
+        if (mRecording) {
+            mLayoutPasses++;
+        }
+    }
+
+    /**
+     * Stops recording the transition
+     *
+     * @return The metrics of the transition, null if not recording
+     */
+    public TransitionMetrics end() {
+        if (!mRecording)
+            return null;
+        mRecording = false;
+
+        long max = 0;
+        long p95 = 0;
+        if (mFrameTimeCount > 0) {
+            Arrays.sort(mFrameTimes, 0, mFrameTimeCount);
+            max = mFrameTimes[mFrameTimeCount - 1];
+            p95 = mFrameTimes[(int) Math.ceil(mFrameTimeCount * 0.95) - 1];
+        }
+        return new TransitionMetrics(mExpanding, mFrameCount, mDroppedFrames, max, p95,
+                mLayoutPasses, mClock.nanoTime() - mStartNanos, mConfiguredDuration);
+    }
+}
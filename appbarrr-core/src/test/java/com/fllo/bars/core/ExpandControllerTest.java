@@ -0,0 +1,188 @@
+package com.fllo.bars.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExpandControllerTest {
+
+    private RecordingHost mHost;
+    private ExpandController mController;
+
+    @Before
+    public void setUp() {
+        mHost = new RecordingHost();
+        mController = new ExpandController(mHost);
+        mController.getGeometry().setStartHeights(420, 168);
+    }
+
+    @Test
+    public void showPreparesAndExpandsToTheMaxSize() {
+        assertTrue(mController.show());
+
+        assertEquals(ExpandController.STATE_EXPANDING, mController.getState());
+        assertEquals(1, mHost.prepareShowingCount);
+        assertEquals(1, mHost.expandCount);
+        // parent height less the toolbar height
+        assertEquals(1920 - 168, mHost.lastMaxHeight);
+        assertEquals(ExpandController.DEFAULT_DURATION, mHost.lastDuration);
+    }
+
+    @Test
+    public void showTwiceStartsOneTransition() {
+        mController.show();
+
+        assertFalse(mController.show());
+        assertEquals(1, mHost.prepareShowingCount);
+        assertEquals(1, mHost.expandCount);
+    }
+
+    @Test
+    public void transitionEndSetsTheFinalState() {
+        mController.show();
+        mController.onTransitionUpdate(1.f);
+        mController.onTransitionEnd();
+
+        assertEquals(ExpandController.STATE_EXPANDED, mController.getState());
+        assertEquals(1.f, mController.getProgress(), 0.f);
+        assertFalse(mController.isRunning());
+
+        mController.hide();
+        mController.onTransitionUpdate(1.f);
+        mController.onTransitionEnd();
+
+        assertEquals(ExpandController.STATE_COLLAPSED, mController.getState());
+        assertEquals(0.f, mController.getProgress(), 0.f);
+    }
+
+    @Test
+    public void hideCollapsesToTheStartHeights() {
+        assertFalse(mController.hide());
+        assertEquals(0, mHost.prepareHidingCount);
+
+        mController.setCollapseDuration(200);
+        mController.show();
+        mController.onTransitionUpdate(1.f);
+        mController.onTransitionEnd();
+        assertTrue(mController.hide());
+
+        assertEquals(ExpandController.STATE_COLLAPSING, mController.getState());
+        assertEquals(1, mHost.prepareHidingCount);
+        assertEquals(1, mHost.collapseCount);
+        assertEquals(420, mHost.lastAppBarHeight);
+        assertEquals(168, mHost.lastToolbarHeight);
+        assertEquals(200, mHost.lastDuration);
+    }
+
+    @Test
+    public void hideReversesARunningExpandingFromItsProgress() {
+        mController.show();
+        mController.onTransitionUpdate(0.5f);
+
+        assertTrue(mController.hide());
+
+        assertEquals(ExpandController.STATE_COLLAPSING, mController.getState());
+        assertEquals(1, mHost.collapseCount);
+        // only the remaining half of the duration
+        assertEquals(150, mHost.lastDuration);
+
+        // back to the expanded mode from the reversed progress
+        mController.onTransitionUpdate(0.5f);
+        assertEquals(0.25f, mController.getProgress(), 0.0001f);
+        mController.show();
+        assertEquals(225, mHost.lastDuration);
+    }
+
+    @Test
+    public void restoreSetsTheExpandedModeWithoutTransition() {
+        assertTrue(mController.restore());
+
+        assertEquals(ExpandController.STATE_EXPANDED, mController.getState());
+        assertEquals(1, mHost.prepareShowingCount);
+        assertEquals(1, mHost.expandedCount);
+        assertEquals(0, mHost.expandCount);
+        assertFalse(mController.restore());
+    }
+
+    @Test
+    public void requestedMaxSizeIsUsedInALargerParent() {
+        mController.getGeometry().setRequestedMaxSize(900);
+        mController.show();
+
+        assertEquals(900, mHost.lastMaxHeight);
+        assertEquals(900, mController.getExpandMaxSize());
+
+        // too large for a smaller parent, the default size is used
+        mController.onParentResized(800);
+        assertEquals(800 - 168, mController.getExpandMaxSize());
+    }
+
+    @Test
+    public void dragReleasedToCollapseHidesTheExpandedElements() {
+        assertTrue(mController.startDrag());
+        assertTrue(mController.isDragging());
+        assertEquals(1, mHost.prepareShowingCount);
+
+        mController.setProgress(1.5f);
+        assertEquals(1.f, mController.getProgress(), 0.f);
+        mController.setProgress(0.3f);
+        mController.endDrag(false);
+
+        assertFalse(mController.isDragging());
+        assertEquals(ExpandController.STATE_COLLAPSING, mController.getState());
+        assertEquals(1, mHost.prepareHidingCount);
+    }
+
+    @Test
+    public void dragOnlyStartsWhenCollapsed() {
+        mController.show();
+
+        assertFalse(mController.startDrag());
+        assertFalse(mController.isDragging());
+    }
+
+    @Test
+    public void parentResizeRescalesTheExpandedMode() {
+        mController.show();
+        mController.onTransitionUpdate(1.f);
+        mController.onTransitionEnd();
+
+        assertTrue(mController.onParentResized(1000));
+        assertEquals(1, mHost.expandedCount);
+        assertEquals(1000 - 168, mHost.lastMaxHeight);
+
+        // same height, nothing to do
+        assertFalse(mController.onParentResized(1000));
+        assertEquals(1, mHost.expandedCount);
+    }
+
+    @Test
+    public void parentResizeGoesOnWithARunningExpanding() {
+        mController.show();
+        mController.onTransitionUpdate(0.5f);
+
+        mController.onParentResized(1000);
+
+        assertEquals(2, mHost.expandCount);
+        assertEquals(1000 - 168, mHost.lastMaxHeight);
+        assertEquals(150, mHost.lastDuration);
+    }
+
+    @Test
+    public void scaledDurationIsAtLeastOneMillisecond() {
+        assertEquals(1, ExpandController.scaleDuration(300, 0.f));
+        assertEquals(300, ExpandController.scaleDuration(300, 1.f));
+    }
+
+    @Test
+    public void unknownParentHeightKeepsTheExpandedSize() {
+        mController.restore();
+
+        assertFalse(mController.onParentResized(0));
+        assertEquals(1, mHost.expandedCount);
+        assertEquals(1920 - 168, mController.getExpandMaxSize());
+    }
+}
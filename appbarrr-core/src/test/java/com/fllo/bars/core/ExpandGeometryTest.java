@@ -0,0 +1,132 @@
+package com.fllo.bars.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExpandGeometryTest {
+
+    private ExpandGeometry mGeometry;
+
+    @Before
+    public void setUp() {
+        mGeometry = new ExpandGeometry();
+    }
+
+    @Test
+    public void measuredOnceBothHeightsAreKnown() {
+        assertFalse(mGeometry.isMeasured());
+
+        mGeometry.setStartHeights(0, 168);
+        assertTrue(mGeometry.hasToolbarStartHeight());
+        assertFalse(mGeometry.isMeasured());
+
+        mGeometry.setStartHeights(420, 168);
+        assertTrue(mGeometry.isMeasured());
+
+        mGeometry.reset();
+        assertFalse(mGeometry.isMeasured());
+        assertFalse(mGeometry.hasToolbarStartHeight());
+    }
+
+    @Test
+    public void defaultMaxSizeFillsTheParentUnderTheToolbar() {
+        mGeometry.setStartHeights(420, 168);
+        mGeometry.setParentHeight(1920);
+
+        assertEquals(1920 - 168, mGeometry.getMaxSize());
+    }
+
+    @Test
+    public void requestedMaxSizeIsKeptInALargerParent() {
+        mGeometry.setStartHeights(420, 168);
+        mGeometry.setRequestedMaxSize(900);
+        mGeometry.setParentHeight(1920);
+
+        assertEquals(900, mGeometry.getMaxSize());
+
+        // too large for a smaller parent, the default size is used
+        mGeometry.setParentHeight(800);
+        assertEquals(800 - 168, mGeometry.getMaxSize());
+        // and the requested one is back in a larger parent
+        mGeometry.setParentHeight(1920);
+        assertEquals(900, mGeometry.getMaxSize());
+        assertEquals(900, mGeometry.getRequestedMaxSize());
+    }
+
+    @Test
+    public void parentHeightOnlyChangesOnce() {
+        assertFalse(mGeometry.hasParentHeight());
+
+        assertTrue(mGeometry.setParentHeight(1920));
+        assertFalse(mGeometry.setParentHeight(1920));
+        assertTrue(mGeometry.hasParentHeight());
+    }
+
+    @Test
+    public void unknownParentHeightKeepsTheLastMaxSize() {
+        mGeometry.setStartHeights(420, 168);
+        mGeometry.setParentHeight(1920);
+
+        assertFalse(mGeometry.setParentHeight(0));
+        assertTrue(mGeometry.hasParentHeight());
+        assertEquals(1920 - 168, mGeometry.getMaxSize());
+    }
+
+    @Test
+    public void maxSizeIsNeverNegative() {
+        mGeometry.setStartHeights(420, 168);
+
+        assertEquals(0, mGeometry.getMaxSize());
+        assertEquals(0, mGeometry.resolveMaxSize(0));
+        assertEquals(0, mGeometry.resolveMaxSize(100));
+    }
+
+    @Test
+    public void maxSizeFollowsTheStartHeights() {
+        mGeometry.setParentHeight(1920);
+        mGeometry.setStartHeights(420, 168);
+        assertEquals(1920 - 168, mGeometry.getMaxSize());
+
+        mGeometry.setStartHeights(420, 200);
+        assertEquals(1920 - 200, mGeometry.getMaxSize());
+    }
+
+    @Test
+    public void severalWidgetsKeepTheirOwnGeometry() {
+        // pages of a ViewPager, measured with different heights
+        RecordingHost firstHost = new RecordingHost();
+        RecordingHost secondHost = new RecordingHost();
+        secondHost.parentHeight = 1200;
+        ExpandController first = new ExpandController(firstHost);
+        ExpandController second = new ExpandController(secondHost);
+        first.getGeometry().setStartHeights(420, 168);
+        second.getGeometry().setStartHeights(600, 200);
+
+        // interleaved transitions
+        first.show();
+        second.show();
+        assertEquals(1920 - 168, firstHost.lastMaxHeight);
+        assertEquals(1200 - 200, secondHost.lastMaxHeight);
+        first.onTransitionEnd();
+        second.onTransitionEnd();
+
+        // the first page is detached and forgets its heights
+        first.getGeometry().reset();
+        second.hide();
+        assertEquals(600, secondHost.lastAppBarHeight);
+        assertEquals(200, secondHost.lastToolbarHeight);
+        assertTrue(second.getGeometry().isMeasured());
+
+        // and measured again without changing the second one
+        first.getGeometry().setStartHeights(300, 150);
+        first.hide();
+        assertEquals(300, firstHost.lastAppBarHeight);
+        assertEquals(150, firstHost.lastToolbarHeight);
+        assertEquals(600, second.getGeometry().getAppBarStartHeight());
+        assertEquals(200, second.getGeometry().getToolbarStartHeight());
+    }
+}
@@ -0,0 +1,65 @@
+package com.fllo.bars.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExpandTransitionTest {
+
+    /**
+     * Frames of a 300ms transition at 60fps
+     */
+    private static final int FRAMES = 18;
+
+    private ExpandTransition mTransition;
+    private CountingTargets mTargets;
+
+    @Before
+    public void setUp() {
+        mTransition = new ExpandTransition(2);
+        mTargets = new CountingTargets(2);
+    }
+
+    @Test
+    public void eachFrameRequestsOneLayoutForAllTheViews() {
+        mTransition.set(0, 420, 1752);
+        mTransition.set(1, 168, 1752);
+
+        for (int f = 1; f <= FRAMES; f++) {
+            int before = mTargets.layoutRequests;
+            mTransition.apply((float) f / FRAMES, mTargets);
+
+            assertEquals(1, mTargets.layoutRequests - before);
+            // both views moved in the same frame
+            assertEquals(mTransition.heightAt(0, (float) f / FRAMES), mTargets.heights[0]);
+            assertEquals(mTransition.heightAt(1, (float) f / FRAMES), mTargets.heights[1]);
+        }
+        assertEquals(FRAMES, mTargets.layoutRequests);
+        assertEquals(1752, mTargets.heights[0]);
+        assertEquals(1752, mTargets.heights[1]);
+    }
+
+    /**
+     * Targets which record their heights and count the layout requests
+     */
+    private static final class CountingTargets implements ExpandTransition.Targets {
+
+        final int[] heights;
+        int layoutRequests;
+
+        CountingTargets(int count) {
+            heights = new int[count];
+        }
+
+        @Override
+        public void setHeight(int index, int height) {
+            heights[index] = height;
+        }
+
+        @Override
+        public void requestLayout() {
+            layoutRequests++;
+        }
+    }
+}
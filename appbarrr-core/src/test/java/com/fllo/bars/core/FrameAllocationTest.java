@@ -0,0 +1,150 @@
+package com.fllo.bars.core;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrameAllocationTest {
+
+    /**
+     * Frames of a 300ms transition at 60fps
+     */
+    private static final int FRAMES = 18;
+
+    private static final long FRAME = 16666667L;
+
+    /**
+     * Transitions run before measuring, so the classes are
+     * loaded and the buffers have their final size
+     */
+    private static final int WARMUP = 2000;
+
+    private static final int MEASURED = 2000;
+
+    private com.sun.management.ThreadMXBean mThreads;
+    private RecordingHost mHost;
+    private ExpandController mController;
+    private ExpandTransition mTransition;
+    private ExpandSpring mSpring;
+    private TransitionMetricsRecorder mRecorder;
+    private Targets mTargets;
+    private long mVsync;
+
+    @Before
+    public void setUp() {
+        Object threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        mThreads = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(mThreads.isThreadAllocatedMemorySupported());
+        mThreads.setThreadAllocatedMemoryEnabled(true);
+
+        mHost = new RecordingHost();
+        mController = new ExpandController(mHost);
+        mController.getGeometry().setStartHeights(420, 168);
+        mTransition = new ExpandTransition(2);
+        mTransition.set(0, 420, 1752);
+        mTransition.set(1, 168, 1752);
+        mSpring = new ExpandSpring();
+        mRecorder = new TransitionMetricsRecorder(new TransitionMetricsRecorder.Clock() {
+            @Override
+            public long nanoTime() {
+                return mVsync;
+            }
+        }, FRAME);
+        mTargets = new Targets();
+    }
+
+    @Test
+    public void transitionFramesAllocateNothing() {
+        for (int i = 0; i < WARMUP; i++) {
+            runTransitions();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        // the reading itself may allocate, measure it alone first
+        long before = mThreads.getThreadAllocatedBytes(threadId);
+        long overhead = mThreads.getThreadAllocatedBytes(threadId) - before;
+
+        before = mThreads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED; i++) {
+            runTransitions();
+        }
+        long allocated = mThreads.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertEquals(0, Math.max(0, allocated));
+        assertEquals(FRAMES * (WARMUP + MEASURED) * 2, mTargets.layoutRequests);
+    }
+
+    @Test
+    public void springSettlingAllocatesNothing() {
+        for (int i = 0; i < WARMUP; i++) {
+            settle();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = mThreads.getThreadAllocatedBytes(threadId);
+        long overhead = mThreads.getThreadAllocatedBytes(threadId) - before;
+
+        before = mThreads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED; i++) {
+            settle();
+        }
+        long allocated = mThreads.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertEquals(0, Math.max(0, allocated));
+    }
+
+    /**
+     * Runs an expanding then a collapsing transition as the
+     * widget does, frame by frame
+     */
+    private void runTransitions() {
+        mController.show();
+        runFrames(true);
+        mController.hide();
+        runFrames(false);
+    }
+
+    private void runFrames(boolean expanding) {
+        // the metrics built by end() are the one allocation of a transition,
+        // made only while a listener is set, so the recording is restarted
+        mRecorder.begin(expanding, ExpandController.DEFAULT_DURATION);
+        for (int f = 1; f <= FRAMES; f++) {
+            mVsync += FRAME;
+            float fraction = (float) f / FRAMES;
+            mRecorder.onFrame(mVsync);
+            mController.onTransitionUpdate(fraction);
+            mTransition.apply(expanding ? fraction : 1.f - fraction, mTargets);
+            mRecorder.onLayout();
+        }
+        mController.onTransitionEnd();
+    }
+
+    /**
+     * Settles a released drag until the spring rests
+     */
+    private void settle() {
+        mSpring.start(0.6f, 0.f, 1.f);
+        while (!mSpring.step(FRAME)) {
+            mTransition.apply(mSpring.getPosition(), mTargets);
+        }
+    }
+
+    private static final class Targets implements ExpandTransition.Targets {
+
+        int layoutRequests;
+
+        @Override
+        public void setHeight(int index, int height) {
+        }
+
+        @Override
+        public void requestLayout() {
+            layoutRequests++;
+        }
+    }
+}
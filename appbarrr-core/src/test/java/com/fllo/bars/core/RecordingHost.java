@@ -0,0 +1,56 @@
+package com.fllo.bars.core;
+
+/**
+ * Host which records the calls of an {@link ExpandController}
+ */
+class RecordingHost implements ExpandController.Host {
+
+    int parentHeight = 1920;
+
+    int prepareShowingCount;
+    int prepareHidingCount;
+    int expandCount;
+    int expandedCount;
+    int collapseCount;
+
+    int lastMaxHeight;
+    int lastAppBarHeight;
+    int lastToolbarHeight;
+    long lastDuration;
+
+    @Override
+    public int getParentHeight() {
+        return parentHeight;
+    }
+
+    @Override
+    public void onPrepareShowing() {
+        prepareShowingCount++;
+    }
+
+    @Override
+    public void onPrepareHiding() {
+        prepareHidingCount++;
+    }
+
+    @Override
+    public void onExpand(int maxHeight, long duration) {
+        expandCount++;
+        lastMaxHeight = maxHeight;
+        lastDuration = duration;
+    }
+
+    @Override
+    public void onExpanded(int maxHeight) {
+        expandedCount++;
+        lastMaxHeight = maxHeight;
+    }
+
+    @Override
+    public void onCollapse(int appBarHeight, int toolbarHeight, long duration) {
+        collapseCount++;
+        lastAppBarHeight = appBarHeight;
+        lastToolbarHeight = toolbarHeight;
+        lastDuration = duration;
+    }
+}
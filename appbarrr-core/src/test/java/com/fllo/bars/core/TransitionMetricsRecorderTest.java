@@ -0,0 +1,119 @@
+package com.fllo.bars.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TransitionMetricsRecorderTest {
+
+    private static final long FRAME = 16666667L;
+
+    /**
+     * Vsync times are in another time base than the clock
+     */
+    private static final long VSYNC_BASE = 5000000000L;
+
+    private FakeClock mClock;
+    private TransitionMetricsRecorder mRecorder;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mClock.now = 1000L;
+        mRecorder = new TransitionMetricsRecorder(mClock, FRAME);
+    }
+
+    @Test
+    public void smoothTransitionDropsNoFrame() {
+        mRecorder.begin(true, 300);
+        assertTrue(mRecorder.isRecording());
+        for (int f = 0; f < 18; f++) {
+            mRecorder.onFrame(VSYNC_BASE + f * FRAME);
+            mRecorder.onLayout();
+        }
+        mClock.now += 300000000L;
+        TransitionMetrics metrics = mRecorder.end();
+
+        assertFalse(mRecorder.isRecording());
+        assertTrue(metrics.isExpanding());
+        assertEquals(18, metrics.getFrameCount());
+        assertEquals(0, metrics.getDroppedFrames());
+        assertEquals(FRAME, metrics.getMaxFrameTimeNanos());
+        assertEquals(FRAME, metrics.getP95FrameTimeNanos());
+        assertEquals(18, metrics.getLayoutPasses());
+        assertEquals(300000000L, metrics.getDurationNanos());
+        assertEquals(300, metrics.getConfiguredDuration());
+    }
+
+    @Test
+    public void firstFrameOnlyStartsTheFirstInterval() {
+        mRecorder.begin(false, 300);
+        // the vsync time of the first frame is far from the clock time
+        mRecorder.onFrame(VSYNC_BASE);
+        mRecorder.onFrame(VSYNC_BASE + FRAME);
+        TransitionMetrics metrics = mRecorder.end();
+
+        assertEquals(2, metrics.getFrameCount());
+        assertEquals(0, metrics.getDroppedFrames());
+        assertEquals(FRAME, metrics.getMaxFrameTimeNanos());
+    }
+
+    @Test
+    public void longFramesCountTheMissedPeriods() {
+        mRecorder.begin(true, 300);
+        long time = VSYNC_BASE;
+        mRecorder.onFrame(time);
+        mRecorder.onFrame(time += FRAME);
+        mRecorder.onFrame(time += 3 * FRAME);
+        mRecorder.onFrame(time += 2 * FRAME);
+        TransitionMetrics metrics = mRecorder.end();
+
+        assertEquals(4, metrics.getFrameCount());
+        assertEquals(3, metrics.getDroppedFrames());
+        assertEquals(3 * FRAME, metrics.getMaxFrameTimeNanos());
+        assertEquals(3 * FRAME, metrics.getP95FrameTimeNanos());
+    }
+
+    @Test
+    public void buffersAreResetBetweenTransitions() {
+        mRecorder.begin(true, 300);
+        for (int f = 0; f < 100; f++) {
+            mRecorder.onFrame(VSYNC_BASE + f * 2 * FRAME);
+        }
+        mRecorder.end();
+
+        mRecorder.begin(false, 200);
+        mRecorder.onFrame(VSYNC_BASE);
+        mRecorder.onFrame(VSYNC_BASE + FRAME);
+        mRecorder.onLayout();
+        TransitionMetrics metrics = mRecorder.end();
+
+        assertFalse(metrics.isExpanding());
+        assertEquals(2, metrics.getFrameCount());
+        assertEquals(0, metrics.getDroppedFrames());
+        assertEquals(FRAME, metrics.getMaxFrameTimeNanos());
+        assertEquals(1, metrics.getLayoutPasses());
+    }
+
+    @Test
+    public void framesOutsideATransitionAreIgnored() {
+        mRecorder.onFrame(VSYNC_BASE);
+        mRecorder.onLayout();
+
+        assertFalse(mRecorder.isRecording());
+        assertNull(mRecorder.end());
+    }
+
+    private static final class FakeClock implements TransitionMetricsRecorder.Clock {
+        long now;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.fllo.bars;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.Toolbar;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import com.fllo.bars.test.R;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <h2>AppBarrrConstructionBenchmark</h2>
+ * <p>Compares the construction of a widget inflated from xml with its
+ * creation by the {@link AppBarrr.Builder}, on the device: both paths need
+ * the Android runtime (inflater, resources, styled attributes), so they
+ * can't be measured by the JMH benchmarks of the core.</p>
+ *
+ * <p>The two paths create the same widget, a 56dp toolbar and an empty
+ * expanded layout. The median times are reported in the instrumentation
+ * status and in the log.</p>
+ */
+@RunWith(AndroidJUnit4.class)
+public class AppBarrrConstructionBenchmark {
+
+    private static final String TAG = "AppBarrrBenchmark";
+
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 200;
+
+    @Rule
+    public final ActivityTestRule<TestActivity> mActivityRule =
+            new ActivityTestRule<TestActivity>(TestActivity.class);
+
+    @Test
+    public void builderCostsLessThanXml() {
+        final TestActivity activity = mActivityRule.getActivity();
+        final long[] medians = new long[2];
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                medians[0] = measure(new XmlConstruction(activity));
+                medians[1] = measure(new BuilderConstruction(activity));
+            }
+        });
+
+        Bundle results = new Bundle();
+        results.putLong("xml_median_nanos", medians[0]);
+        results.putLong("builder_median_nanos", medians[1]);
+        instrumentation.sendStatus(0, results);
+        Log.i(TAG, "xml " + medians[0] + "ns, builder " + medians[1] + "ns");
+
+        // the builder skips three inflations and the styled attributes
+        assertTrue(medians[1] < medians[0]);
+    }
+
+    /**
+     * Creates widgets and gives the median time of a creation
+     *
+     * @param construction Path creating the widget
+     * @return Median time in nanoseconds
+     */
+    private static long measure(Construction construction) {
+        for (int i = 0; i < WARMUP; i++) {
+            construction.create();
+        }
+        long[] times = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            construction.create();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[ITERATIONS / 2];
+    }
+
+    /**
+     * A path creating the widget
+     */
+    private interface Construction {
+        AppBarrr create();
+    }
+
+    /**
+     * Inflates the widget, its toolbar and its expanded layout from xml
+     */
+    private static final class XmlConstruction implements Construction {
+        private final TestActivity mActivity;
+        private final LayoutInflater mInflater;
+
+        XmlConstruction(TestActivity activity) {
+            mActivity = activity;
+            mInflater = activity.getLayoutInflater();
+        }
+
+        @Override
+        public AppBarrr create() {
+            return (AppBarrr) mInflater.inflate(R.layout.test_appbarrr,
+                    mActivity.getContent(), false);
+        }
+    }
+
+    /**
+     * Creates the same widget in code
+     */
+    private static final class BuilderConstruction implements Construction {
+        private final Context mContext;
+        private final int mToolbarHeight;
+
+        BuilderConstruction(Context context) {
+            mContext = context;
+            mToolbarHeight = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 56,
+                    context.getResources().getDisplayMetrics());
+        }
+
+        @Override
+        public AppBarrr create() {
+            Toolbar toolbar = new Toolbar(mContext);
+            toolbar.setLayoutParams(new ViewGroup.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, mToolbarHeight));
+            return new AppBarrr.Builder(mContext)
+                    .toolbar(toolbar)
+                    .expandLayout(new FrameLayout(mContext))
+                    .build();
+        }
+    }
+}
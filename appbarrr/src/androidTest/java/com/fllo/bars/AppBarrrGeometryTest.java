@@ -0,0 +1,84 @@
+package com.fllo.bars;
+
+import android.app.Instrumentation;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.LayoutInflater;
+import android.view.View;
+
+import com.fllo.bars.test.R;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <h2>AppBarrrGeometryTest</h2>
+ * <p>Runs interleaved transitions on two widgets of different heights,
+ * like the pages of a ViewPager, each one keeping its own geometry</p>
+ */
+@RunWith(AndroidJUnit4.class)
+public class AppBarrrGeometryTest {
+
+    /**
+     * Frames waited for a transition, longer than the default
+     * durations at 60 frames per second
+     */
+    private static final int TRANSITION_FRAMES = 40;
+
+    @Rule
+    public final ActivityTestRule<TestActivity> mActivityRule =
+            new ActivityTestRule<TestActivity>(TestActivity.class);
+
+    @Test
+    public void severalWidgetsKeepTheirOwnHeights() throws InterruptedException {
+        final TestActivity activity = mActivityRule.getActivity();
+        final AppBarrr[] appBarrrs = new AppBarrr[2];
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                View pages = LayoutInflater.from(activity)
+                        .inflate(R.layout.test_two_pages, activity.getContent(), false);
+                activity.getContent().addView(pages);
+                appBarrrs[0] = (AppBarrr) pages.findViewById(R.id.first_barrr);
+                appBarrrs[1] = (AppBarrr) pages.findViewById(R.id.second_barrr);
+            }
+        });
+        Frames.await(Frames.STABLE_FRAMES);
+        instrumentation.waitForIdleSync();
+        int firstHeight = appBarrrs[0].getHeight();
+        int secondHeight = appBarrrs[1].getHeight();
+        int firstToolbarHeight = appBarrrs[0].getToolbar().getHeight();
+        int secondToolbarHeight = appBarrrs[1].getToolbar().getHeight();
+        assertTrue(firstToolbarHeight != secondToolbarHeight);
+
+        // interleaved transitions, collapsed in the other order
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                appBarrrs[0].showExpandedLayout();
+                appBarrrs[1].showExpandedLayout();
+            }
+        });
+        Frames.await(TRANSITION_FRAMES);
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                appBarrrs[1].hideExpandedLayout();
+                appBarrrs[0].hideExpandedLayout();
+            }
+        });
+        Frames.await(TRANSITION_FRAMES);
+        instrumentation.waitForIdleSync();
+
+        assertEquals(firstHeight, appBarrrs[0].getHeight());
+        assertEquals(secondHeight, appBarrrs[1].getHeight());
+        assertEquals(firstToolbarHeight, appBarrrs[0].getToolbar().getHeight());
+        assertEquals(secondToolbarHeight, appBarrrs[1].getToolbar().getHeight());
+    }
+}
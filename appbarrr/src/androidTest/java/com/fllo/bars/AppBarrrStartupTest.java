@@ -0,0 +1,66 @@
+package com.fllo.bars;
+
+import android.app.Instrumentation;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <h2>AppBarrrStartupTest</h2>
+ * <p>Counts the layout passes of the widget from the setContentView
+ * of its activity to a stable frame</p>
+ */
+@RunWith(AndroidJUnit4.class)
+public class AppBarrrStartupTest {
+
+    @Rule
+    public final ActivityTestRule<CountingActivity> mActivityRule =
+            new ActivityTestRule<CountingActivity>(CountingActivity.class);
+
+    @Test
+    public void firstFrameNeedsASingleLayoutPass() throws InterruptedException {
+        LayoutCountingAppBarrr appBarrr = mActivityRule.getActivity().getAppBarrr();
+        Frames.awaitStableFrame(appBarrr);
+
+        assertEquals(1, appBarrr.getLayoutCount());
+        assertEquals(0, appBarrr.getLayoutsAfterFirstDraw());
+    }
+
+    @Test
+    public void restoredStateIsDrawnExpandedFirst() throws InterruptedException {
+        final CountingActivity previous = mActivityRule.getActivity();
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                previous.getAppBarrr().setExpandDuration(1);
+                previous.getAppBarrr().showExpandedLayout();
+            }
+        });
+        Frames.await(Frames.STABLE_FRAMES);
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                previous.recreate();
+            }
+        });
+        instrumentation.waitForIdleSync();
+
+        CountingActivity recreated = CountingActivity.getLastCreated();
+        assertNotSame(previous, recreated);
+        LayoutCountingAppBarrr appBarrr = recreated.getAppBarrr();
+        Frames.awaitStableFrame(appBarrr);
+
+        // restored out of the layout pass, before the first draw
+        assertTrue(appBarrr.isExpandedAtFirstDraw());
+        assertEquals(0, appBarrr.getLayoutsAfterFirstDraw());
+    }
+}
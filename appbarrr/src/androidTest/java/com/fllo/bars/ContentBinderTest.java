@@ -0,0 +1,93 @@
+package com.fllo.bars;
+
+import android.support.test.annotation.UiThreadTest;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.LayoutInflater;
+import android.view.View;
+
+import com.fllo.bars.test.R;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <h2>ContentBinderTest</h2>
+ * <p>Prepares the contents of a widget once per kept key, and binds
+ * them once into the same expanded layout</p>
+ */
+@RunWith(AndroidJUnit4.class)
+public class ContentBinderTest {
+
+    @Rule
+    public final ActivityTestRule<TestActivity> mActivityRule =
+            new ActivityTestRule<TestActivity>(TestActivity.class);
+
+    private AppBarrr mAppBarrr;
+    private CountingBinder mBinder;
+
+    @Before
+    public void setUp() throws Throwable {
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                TestActivity activity = mActivityRule.getActivity();
+                mAppBarrr = (AppBarrr) LayoutInflater.from(activity)
+                        .inflate(R.layout.test_appbarrr, activity.getContent(), false);
+                activity.getContent().addView(mAppBarrr);
+                mBinder = new CountingBinder();
+                mAppBarrr.setContentBinder(mBinder);
+            }
+        });
+    }
+
+    @Test
+    @UiThreadTest
+    public void keptContentsArePreparedOnce() {
+        mAppBarrr.setContentCacheSize(2);
+
+        mAppBarrr.bindContent("first");
+        mAppBarrr.bindContent("second");
+        mAppBarrr.bindContent("first");
+        // same key in the same layout, nothing to bind
+        mAppBarrr.bindContent("first");
+
+        assertEquals(2, mBinder.prepareCount);
+        assertEquals(3, mBinder.bindCount);
+
+        // the least recently used one is evicted
+        mAppBarrr.bindContent("third");
+        mAppBarrr.bindContent("second");
+        assertEquals(4, mBinder.prepareCount);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @UiThreadTest
+    public void cacheSizeBelowOneIsRejected() {
+        mAppBarrr.setContentCacheSize(0);
+    }
+
+    /**
+     * Binder counting its calls
+     */
+    private static final class CountingBinder implements ExpandContentBinder<Object> {
+
+        int prepareCount;
+        int bindCount;
+
+        @Override
+        public Object prepare(Object key) {
+            prepareCount++;
+            return key;
+        }
+
+        @Override
+        public void bind(View expandLayout, Object content) {
+            bindCount++;
+        }
+    }
+}
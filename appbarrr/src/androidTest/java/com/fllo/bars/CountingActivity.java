@@ -0,0 +1,41 @@
+package com.fllo.bars;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+
+import com.fllo.bars.test.R;
+
+/**
+ * <h2>CountingActivity</h2>
+ * <p>Activity setting a layout with a {@link LayoutCountingAppBarrr},
+ * the last created one is kept to follow its recreations</p>
+ */
+public class CountingActivity extends AppCompatActivity {
+
+    private static volatile CountingActivity sLastCreated;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.test_counting);
+        sLastCreated = this;
+    }
+
+    /**
+     * Gets the widget of the layout
+     *
+     * @return The widget counting its layout passes
+     */
+    public LayoutCountingAppBarrr getAppBarrr() {
+        return (LayoutCountingAppBarrr) findViewById(R.id.counting_barrr);
+    }
+
+    /**
+     * Gets the last created activity
+     *
+     * @return The activity, null if none
+     */
+    public static CountingActivity getLastCreated() {
+        return sLastCreated;
+    }
+}
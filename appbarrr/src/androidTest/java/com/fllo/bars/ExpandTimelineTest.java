@@ -0,0 +1,193 @@
+package com.fllo.bars;
+
+import android.app.Instrumentation;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.Choreographer;
+import android.view.View;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <h2>ExpandTimelineTest</h2>
+ * <p>Runs the transitions of a widget on its real timeline and counts
+ * its layout passes on each frame</p>
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExpandTimelineTest {
+
+    /**
+     * Frames waited for a transition, longer than the default
+     * durations at 60 frames per second
+     */
+    private static final int TRANSITION_FRAMES = 40;
+
+    @Rule
+    public final ActivityTestRule<CountingActivity> mActivityRule =
+            new ActivityTestRule<CountingActivity>(CountingActivity.class);
+
+    @Test
+    public void expandingLaysOutOncePerFrame() throws InterruptedException {
+        final LayoutCountingAppBarrr appBarrr = mActivityRule.getActivity().getAppBarrr();
+        Frames.awaitStableFrame(appBarrr);
+
+        FrameLayoutCounter counter = runTransition(appBarrr, new Runnable() {
+            @Override
+            public void run() {
+                appBarrr.showExpandedLayout();
+            }
+        });
+
+        // the heights moved on several frames, each with one layout
+        assertTrue(counter.getLayoutCount() > 1);
+        assertTrue(counter.getMaxLayoutsPerFrame() <= 1);
+    }
+
+    @Test
+    public void collapsingLaysOutOncePerFrame() throws InterruptedException {
+        final LayoutCountingAppBarrr appBarrr = mActivityRule.getActivity().getAppBarrr();
+        Frames.awaitStableFrame(appBarrr);
+        runTransition(appBarrr, new Runnable() {
+            @Override
+            public void run() {
+                appBarrr.showExpandedLayout();
+            }
+        });
+
+        FrameLayoutCounter counter = runTransition(appBarrr, new Runnable() {
+            @Override
+            public void run() {
+                appBarrr.hideExpandedLayout();
+            }
+        });
+
+        assertTrue(counter.getLayoutCount() > 1);
+        assertTrue(counter.getMaxLayoutsPerFrame() <= 1);
+    }
+
+    @Test
+    public void revealCollapseHidesTheExpandedLayoutAtTheEnd() throws InterruptedException {
+        final LayoutCountingAppBarrr appBarrr = mActivityRule.getActivity().getAppBarrr();
+        Frames.awaitStableFrame(appBarrr);
+        runTransition(appBarrr, new Runnable() {
+            @Override
+            public void run() {
+                appBarrr.setExpandAnimationMode(AppBarrr.EXPAND_MODE_REVEAL);
+                appBarrr.showExpandedLayout();
+            }
+        });
+
+        final boolean[] shownWhileConcealing = new boolean[1];
+        FrameLayoutCounter counter = runTransition(appBarrr, new Runnable() {
+            @Override
+            public void run() {
+                appBarrr.hideExpandedLayout();
+                shownWhileConcealing[0] =
+                        appBarrr.getExpandLayout().getVisibility() == View.VISIBLE;
+            }
+        });
+
+        assertTrue(shownWhileConcealing[0]);
+        assertEquals(View.GONE, appBarrr.getExpandLayout().getVisibility());
+        // a single layout, committing the collapsed geometry at the end
+        assertEquals(1, counter.getLayoutCount());
+    }
+
+    /**
+     * Starts a transition and counts the layout passes of
+     * each frame until its end
+     *
+     * @param appBarrr Widget counting its layout passes
+     * @param transition Starts the transition on the main thread
+     * @return The counter of the transition frames
+     */
+    static FrameLayoutCounter runTransition(final LayoutCountingAppBarrr appBarrr,
+            final Runnable transition) throws InterruptedException {
+        final FrameLayoutCounter counter = new FrameLayoutCounter(appBarrr);
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                counter.start();
+                transition.run();
+            }
+        });
+        Frames.await(TRANSITION_FRAMES);
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                counter.stop();
+            }
+        });
+        return counter;
+    }
+
+    /**
+     * Frame callback reading the layout passes of the widget between
+     * two frames, run on the main thread
+     */
+    static final class FrameLayoutCounter implements Choreographer.FrameCallback {
+
+        private final LayoutCountingAppBarrr mAppBarrr;
+        private int mStartCount;
+        private int mLastCount;
+        private int mMaxLayoutsPerFrame;
+        private boolean mRunning;
+
+        FrameLayoutCounter(LayoutCountingAppBarrr appBarrr) {
+            mAppBarrr = appBarrr;
+        }
+
+        void start() {
+            mStartCount = mAppBarrr.getLayoutCount();
+            mLastCount = mStartCount;
+            mRunning = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            mRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+            readFrame();
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            // run before the traversal, so it reads the previous frame
+            readFrame();
+            if (mRunning) {
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+
+        private void readFrame() {
+            int count = mAppBarrr.getLayoutCount();
+            mMaxLayoutsPerFrame = Math.max(mMaxLayoutsPerFrame, count - mLastCount);
+            mLastCount = count;
+        }
+
+        /**
+         * Gets the layout passes since the start
+         *
+         * @return Number of layout passes
+         */
+        int getLayoutCount() {
+            return mLastCount - mStartCount;
+        }
+
+        /**
+         * Gets the most layout passes of a single frame
+         *
+         * @return Number of layout passes
+         */
+        int getMaxLayoutsPerFrame() {
+            return mMaxLayoutsPerFrame;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.fllo.bars;
+
+import android.support.test.InstrumentationRegistry;
+import android.view.Choreographer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <h2>Frames</h2>
+ * <p>Waits for the frames of the main thread in the instrumented tests</p>
+ */
+final class Frames {
+
+    /**
+     * Frames waited after the first draw for a late layout
+     */
+    static final int STABLE_FRAMES = 10;
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private Frames() {
+    }
+
+    /**
+     * Waits for the first draw of the widget, then for some frames
+     * to count a late layout
+     *
+     * @param appBarrr Widget drawn
+     */
+    static void awaitStableFrame(LayoutCountingAppBarrr appBarrr)
+            throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!appBarrr.isDrawn()) {
+            assertTrue("not drawn", System.nanoTime() < end);
+            await(1);
+        }
+        await(STABLE_FRAMES);
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+    }
+
+    /**
+     * Waits for frames of the main thread
+     *
+     * @param count Number of frames
+     */
+    static void await(final int count) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(count);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        latch.countDown();
+                        if (latch.getCount() > 0) {
+                            Choreographer.getInstance().postFrameCallback(this);
+                        }
+                    }
+                });
+            }
+        });
+        assertTrue("no frame", latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+}
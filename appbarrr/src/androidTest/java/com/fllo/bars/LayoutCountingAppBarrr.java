@@ -0,0 +1,75 @@
+package com.fllo.bars;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.util.AttributeSet;
+
+/**
+ * <h2>LayoutCountingAppBarrr</h2>
+ * <p>Widget counting its layout passes, before and after its first draw</p>
+ */
+public class LayoutCountingAppBarrr extends AppBarrr {
+
+    private int mLayoutCount;
+    private int mLayoutsAfterFirstDraw;
+    private volatile boolean mDrawn;
+    private boolean mExpandedAtFirstDraw;
+
+    public LayoutCountingAppBarrr(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        mLayoutCount++;
+        if (mDrawn) {
+            mLayoutsAfterFirstDraw++;
+        }
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        if (!mDrawn) {
+            mDrawn = true;
+            mExpandedAtFirstDraw = isExpanded();
+        }
+        super.dispatchDraw(canvas);
+    }
+
+    /**
+     * Gets the layout passes since the creation
+     *
+     * @return Number of layout passes
+     */
+    public int getLayoutCount() {
+        return mLayoutCount;
+    }
+
+    /**
+     * Gets the layout passes after the first draw
+     *
+     * @return Number of layout passes
+     */
+    public int getLayoutsAfterFirstDraw() {
+        return mLayoutsAfterFirstDraw;
+    }
+
+    /**
+     * Returns true once drawn
+     *
+     * @return Boolean of the drawn state
+     */
+    public boolean isDrawn() {
+        return mDrawn;
+    }
+
+    /**
+     * Returns true if the first frame was drawn expanded
+     *
+     * @return Boolean of the first mode
+     */
+    public boolean isExpandedAtFirstDraw() {
+        return mExpandedAtFirstDraw;
+    }
+}
@@ -0,0 +1,73 @@
+package com.fllo.bars;
+
+import android.app.Instrumentation;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.annotation.UiThreadTest;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View;
+
+import com.fllo.bars.test.R;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * <h2>PanelCacheTest</h2>
+ * <p>Keeps the panel fading out after a switch until the end of its
+ * cross-fade, even over the cache size</p>
+ */
+@RunWith(AndroidJUnit4.class)
+public class PanelCacheTest {
+
+    /**
+     * Frames waited for a transition or a cross-fade, longer than
+     * their default durations at 60 frames per second
+     */
+    private static final int TRANSITION_FRAMES = 40;
+
+    @Rule
+    public final ActivityTestRule<CountingActivity> mActivityRule =
+            new ActivityTestRule<CountingActivity>(CountingActivity.class);
+
+    @Test
+    public void outgoingPanelIsEvictedAfterItsFade() throws InterruptedException {
+        final LayoutCountingAppBarrr appBarrr = mActivityRule.getActivity().getAppBarrr();
+        Frames.awaitStableFrame(appBarrr);
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                appBarrr.setPanelCacheSize(1);
+                appBarrr.showExpandedLayout();
+            }
+        });
+        Frames.await(TRANSITION_FRAMES);
+
+        final View[] outgoing = new View[2];
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                outgoing[0] = appBarrr.getExpandLayout();
+                appBarrr.showPanel(R.layout.test_panel);
+                outgoing[1] = (View) outgoing[0].getParent();
+            }
+        });
+        Frames.await(TRANSITION_FRAMES);
+        instrumentation.waitForIdleSync();
+
+        // still in the container while fading out
+        assertSame(appBarrr.getExpandLayout().getParent(), outgoing[1]);
+        assertNull(outgoing[0].getParent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @UiThreadTest
+    public void cacheSizeBelowOneIsRejected() {
+        mActivityRule.getActivity().getAppBarrr().setPanelCacheSize(0);
+    }
+}
@@ -0,0 +1,88 @@
+package com.fllo.bars;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.test.annotation.UiThreadTest;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.SparseArray;
+import android.view.LayoutInflater;
+import android.view.View;
+
+import com.fllo.bars.test.R;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <h2>SavedStateTest</h2>
+ * <p>Writes the state of a widget inflated with its real hierarchy,
+ * without the empty states of its children</p>
+ */
+@RunWith(AndroidJUnit4.class)
+public class SavedStateTest {
+
+    @Rule
+    public final ActivityTestRule<TestActivity> mActivityRule =
+            new ActivityTestRule<TestActivity>(TestActivity.class);
+
+    @Test
+    @UiThreadTest
+    public void emptyChildStatesAreNotWritten() {
+        TestActivity activity = mActivityRule.getActivity();
+        AppBarrr appBarrr = (AppBarrr) LayoutInflater.from(activity)
+                .inflate(R.layout.test_appbarrr, activity.getContent(), false);
+
+        AppBarrr.SavedState state = (AppBarrr.SavedState) appBarrr.onSaveInstanceState();
+        SparseArray<Parcelable> allStates = new SparseArray<Parcelable>();
+        for (int i = 0; i < appBarrr.getChildCount(); i++) {
+            appBarrr.getChildAt(i).saveHierarchyState(allStates);
+        }
+
+        // the container and the expanded layout have ids and nothing to save
+        assertTrue(allStates.indexOfValue(View.BaseSavedState.EMPTY_STATE) >= 0);
+        assertNotNull(state.childrenStates);
+        for (int i = 0; i < state.childrenStates.size(); i++) {
+            assertTrue(state.childrenStates.valueAt(i) != View.BaseSavedState.EMPTY_STATE);
+        }
+        assertTrue(sizeOf(state) < sizeOf(state, allStates));
+    }
+
+    /**
+     * Gets the size of a written state
+     *
+     * @param state State of the widget
+     * @return Size in bytes
+     */
+    private static int sizeOf(AppBarrr.SavedState state) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            state.writeToParcel(parcel, 0);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Gets the size of a written state with all the children states
+     *
+     * @param state State of the widget
+     * @param childrenStates States of all the children
+     * @return Size in bytes
+     */
+    @SuppressWarnings("unchecked")
+    private static int sizeOf(AppBarrr.SavedState state, SparseArray childrenStates) {
+        SparseArray compact = state.childrenStates;
+        state.childrenStates = childrenStates;
+        try {
+            return sizeOf(state);
+        } finally {
+            state.childrenStates = compact;
+        }
+    }
+}
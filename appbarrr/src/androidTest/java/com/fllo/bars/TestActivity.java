@@ -0,0 +1,31 @@
+package com.fllo.bars;
+
+import android.os.Bundle;
+import android.support.design.widget.CoordinatorLayout;
+import android.support.v7.app.AppCompatActivity;
+
+/**
+ * <h2>TestActivity</h2>
+ * <p>Empty activity hosting the widgets of the instrumented tests
+ * in a {@link CoordinatorLayout}</p>
+ */
+public class TestActivity extends AppCompatActivity {
+
+    private CoordinatorLayout mContent;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        mContent = new CoordinatorLayout(this);
+        setContentView(mContent);
+    }
+
+    /**
+     * Gets the parent of the widgets
+     *
+     * @return The content layout
+     */
+    public CoordinatorLayout getContent() {
+        return mContent;
+    }
+}
@@ -0,0 +1,102 @@
+package com.fllo.bars;
+
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.fllo.bars.core.TransitionMetrics;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <h2>TransitionFrameAllocationTest</h2>
+ * <p>Counts the allocations of the frames of a running transition on the
+ * main thread: the timeline update, the progress given to the transforms
+ * and the listeners, and the frame callback of the metrics</p>
+ */
+@RunWith(AndroidJUnit4.class)
+public class TransitionFrameAllocationTest {
+
+    /**
+     * Frames of a 300ms transition at 60fps
+     */
+    private static final int FRAMES = 18;
+
+    private static final long FRAME_NANOS = 16666667L;
+
+    /**
+     * Frames run before counting, the buffer of the frame times
+     * grows to hold the warmup and the counted frames
+     */
+    private static final int WARMUP = 300;
+
+    private static final int COUNTED = 200;
+
+    @Rule
+    public final ActivityTestRule<CountingActivity> mActivityRule =
+            new ActivityTestRule<CountingActivity>(CountingActivity.class);
+
+    @Test
+    public void transitionFramesAllocateNothing() throws InterruptedException {
+        final LayoutCountingAppBarrr appBarrr = mActivityRule.getActivity().getAppBarrr();
+        Frames.awaitStableFrame(appBarrr);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                appBarrr.setTransitionMetricsListener(new AppBarrr.TransitionMetricsListener() {
+                    @Override
+                    public void onTransitionMetrics(AppBarrr appBarrr, TransitionMetrics metrics) {
+                    }
+                });
+                appBarrr.addOnExpandProgressListener(new AppBarrr.OnExpandProgressListener() {
+                    @Override
+                    public void onExpandProgress(AppBarrr appBarrr, float fraction,
+                            boolean expanding) {
+                    }
+                });
+                appBarrr.addExpandTransform(appBarrr.getExpandLayout(), new ExpandTransform()
+                        .alpha(0.f, 1.f)
+                        .translationY(-100.f, 0.f));
+                // never ends while the frames are run by hand
+                appBarrr.setExpandDuration(60000);
+                appBarrr.showExpandedLayout();
+            }
+        });
+        Frames.await(2);
+
+        final int[] allocations = new int[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            @SuppressWarnings("deprecation")
+            public void run() {
+                runFrames(appBarrr, 0, WARMUP);
+                Debug.startAllocCounting();
+                Debug.resetThreadAllocCount();
+                runFrames(appBarrr, WARMUP, COUNTED);
+                allocations[0] = Debug.getThreadAllocCount();
+                Debug.stopAllocCounting();
+            }
+        });
+
+        assertEquals(0, allocations[0]);
+    }
+
+    /**
+     * Runs frames of the transition, the fraction going back
+     * and forth so the progress changes on each frame
+     *
+     * @param appBarrr Widget in transition
+     * @param first Index of the first frame
+     * @param count Number of frames
+     */
+    private static void runFrames(AppBarrr appBarrr, int first, int count) {
+        for (int i = first; i < first + count; i++) {
+            appBarrr.doTransitionFrame(i * FRAME_NANOS, (float) (i % FRAMES + 1) / (FRAMES + 1));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.fllo.bars;
+
+import android.support.test.annotation.UiThreadTest;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import com.fllo.bars.test.R;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * <h2>ViewPoolTest</h2>
+ * <p>Pools the views of a live activity, never the ones of an
+ * activity evicted before its widgets are detached</p>
+ */
+@RunWith(AndroidJUnit4.class)
+public class ViewPoolTest {
+
+    @Rule
+    public final ActivityTestRule<TestActivity> mActivityRule =
+            new ActivityTestRule<TestActivity>(TestActivity.class);
+
+    @After
+    public void tearDown() {
+        mActivityRule.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                ViewPool.setMaxSize(0);
+            }
+        });
+    }
+
+    @Test
+    @UiThreadTest
+    public void viewsOfALiveActivityArePooled() {
+        TestActivity activity = mActivityRule.getActivity();
+        ViewPool.setMaxSize(2);
+        View view = new FrameLayout(activity);
+
+        ViewPool.release(activity, R.layout.test_expand_layout, view);
+
+        assertEquals(1, ViewPool.size());
+        assertSame(view, ViewPool.acquire(activity, R.layout.test_expand_layout));
+        assertEquals(0, ViewPool.size());
+    }
+
+    @Test
+    @UiThreadTest
+    public void widgetDetachedAfterEvictionIsNotPooled() {
+        TestActivity activity = mActivityRule.getActivity();
+        ViewPool.setMaxSize(2);
+        AppBarrr appBarrr = (AppBarrr) LayoutInflater.from(activity)
+                .inflate(R.layout.test_appbarrr, activity.getContent(), false);
+        activity.getContent().addView(appBarrr);
+
+        // destroyed: the activity is evicted before its views are detached
+        activity.finish();
+        ViewPool.evict(activity);
+        activity.getContent().removeView(appBarrr);
+        ViewPool.release(activity, R.layout.test_expand_layout, new FrameLayout(activity));
+
+        assertEquals(0, ViewPool.size());
+    }
+}
@@ -1,27 +1,54 @@
 package com.fllo.bars;
 
-import android.animation.ValueAnimator;
+import android.annotation.TargetApi;
 import android.app.Activity;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.ContextWrapper;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Outline;
+import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.os.Parcel;
 import android.os.Parcelable;
-import android.os.SystemClock;
 import android.support.design.widget.AppBarLayout;
 import android.support.design.widget.CollapsingToolbarLayout;
+import android.support.design.widget.CoordinatorLayout;
+import android.support.v4.view.AsyncLayoutInflater;
+import android.support.v4.view.ViewCompat;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
 import android.util.AttributeSet;
 import android.util.SparseArray;
+import android.view.Choreographer;
 import android.view.Gravity;
 import android.view.MotionEvent;
+import android.view.VelocityTracker;
 import android.view.View;
+import android.view.ViewOutlineProvider;
+import android.view.ViewConfiguration;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.ImageView;
 
+import com.fllo.bars.core.ExpandController;
+import com.fllo.bars.core.ExpandGeometry;
+import com.fllo.bars.core.ExpandSpring;
+import com.fllo.bars.core.TransitionMetrics;
+import com.fllo.bars.core.TransitionMetricsRecorder;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * <h2>AppBarrr</h2>
  * <p>A widget which uses the CollapsingToolbarLayout pattern and displays a custom expanded
@@ -62,10 +89,26 @@ import android.widget.ImageView;
  *         app:animCollapseDuration="300"/&gt;
  * </pre>
  *
+ * <p>The widget can also be created in code with an {@link AppBarrr.Builder}, from views
+ * already created or from {@link ViewFactory}s and a typed configuration. Nothing is
+ * inflated and no attribute is parsed:</p>
+ * <pre>
+ *     AppBarrr barrr = new AppBarrr.Builder(activity)
+ *             .toolbar(toolbar)
+ *             .expandLayout(expandLayout)
+ *             .expandAnimationMode(AppBarrr.EXPAND_MODE_REVEAL)
+ *             .build();
+ * </pre>
+ *
  * <h3>Show/Hide:</h3>
  * <p>You can show the expanded layout by calling {@link #showExpandedLayout()}, whereas
  * in order to hide it, call {@link #hideExpandedLayout()}. At any time, you can know the
  * current state of the expanded layout by calling {@link #isExpanded()}.</p>
+ * <p>A call during a running animation reverses it from its current position, with the
+ * remaining part of the duration, so the widget can be toggled quickly.</p>
+ * <p>The calls of a frame are resolved once on the next frame, only the last requested
+ * mode starts a transition: a burst going back to the current mode does nothing. Meanwhile,
+ * {@link #isExpanded()} returns the requested mode.</p>
  * <p>When the expanded layout is showing, a custom view overlaps the nested views from
  * the current layout, if the user clicks on it, this will call {@link #hideExpandedLayout()}
  * by default. If you don't want to hide the expanded layout when the user clicks outside it,
@@ -74,6 +117,16 @@ import android.widget.ImageView;
  * <pre>
  * hideWhenTouchOutside
  * </pre>
+ * <p>The overlapping view can be removed with {@link #setUseMaskView(boolean)} set to
+ * 'false'. In this mask-free mode, the touches outside the widget are detected by its
+ * behavior and go through the nested views if they don't hide the expanded layout. The
+ * nested views can be dimmed by a scrim color set with {@link #setScrimColor(int)},
+ * drawn in one call on the parent's overlay with an animated alpha (API 18+). Nothing
+ * is drawn without a scrim color. These can be declared by xml with:</p>
+ * <pre>
+ * useMaskView
+ * scrimColor
+ * </pre>
  *
  * <h3>Requirements:</h3>
  * <p>The Toolbar and the custom expanded layout must be declared (otherwise, a
@@ -90,6 +143,58 @@ import android.widget.ImageView;
  * <pre>
  * expandMaxSize
  * </pre>
+ * <p>The max size is resolved once and kept until the parent is resized (multi-window,
+ * foldable postures...), then an expanded widget is rescaled directly without inflating
+ * its views again.</p>
+ *
+ * <p>By default, the expanded layout is inflated with the widget. As it may never be
+ * shown, its inflation can be deferred with {@link #INFLATE_LAZY}: the layout is
+ * inflated on the first call of {@link #showExpandedLayout()}. With
+ * {@link #INFLATE_ASYNC}, the layout is inflated ahead of time on a background thread
+ * and attached when ready. Until the inflation is done, {@link #getExpandLayout()}
+ * returns null. With {@link #INFLATE_STAGED}, the layout is inflated with the widget
+ * but its ViewStubs are replaced by Spaces with their layout params, then inflated on
+ * the next frames within {@link #setInflationFrameBudget(long)} per frame. The stubs
+ * should declare their size to keep it while waiting, the stubs still waiting when
+ * the widget expands are inflated at once. This is declared by xml with
+ * "eager", "lazy", "async" or "staged":</p>
+ * <pre>
+ * expandLayoutInflation
+ * inflationFrameBudget
+ * </pre>
+ * <p>{@link #prewarm()} prepares the expanded layout while the main thread is idle: it is
+ * inflated, measured and laid out at {@link #getExpandMaxSize()} without being shown.
+ * Showing it still measures its root again, but its children keep their measures and
+ * positions. The prewarm is cancelled if the widget is
+ * detached before. It can be requested when the widget is attached by xml with:</p>
+ * <pre>
+ * prewarmExpandLayout
+ * </pre>
+ *
+ * <p>The content of the expanded layout can be filled by an {@link ExpandContentBinder}
+ * set with {@link #setContentBinder(ExpandContentBinder)}. {@link #bindContent(Object)}
+ * prepares the content of a key once and binds it when the layout is inflated, and
+ * binding the same key again does nothing. The prepared contents of the last keys are
+ * kept, up to {@link #setContentCacheSize(int)}, so switching between a few items does
+ * not prepare them again.</p>
+ *
+ * <p>Several expanded layouts can be used as panels (filters, search...) switched with
+ * {@link #showPanel(int)}, keyed by layout resource. While expanded, the panels are
+ * cross-faded in hardware layers. The last shown panels stay inflated in the widget,
+ * up to {@link #setPanelCacheSize(int)}, so switching back does not inflate again.</p>
+ *
+ * <p>When the app is hidden or the memory is critically low, a collapsed widget at rest
+ * releases its expanded layout and panels, with their drawables and prepared contents.
+ * They are inflated again on the next showing, the content is bound again and the
+ * transforms of the views with an id are attached again. The releases are reported
+ * with {@link #setMemoryReleaseListener(MemoryReleaseListener)}.</p>
+ *
+ * <p>The widget can be detached and attached again (Fragment back stack...) without
+ * inflating its views again. Screens using the same layouts can also share their
+ * inflated toolbar and expanded layouts through a process-wide pool, keyed by layout
+ * resource: when a collapsed widget is detached, its views are offered to the pool and
+ * another widget of the same activity takes them instead of inflating. The pool is
+ * disabled by default and enabled with {@link #setViewPoolSize(int)}.</p>
  *
  * <h3>Animations:</h3>
  * <p>The expanding and collapsing animations can be set separately. By default the
@@ -102,6 +207,47 @@ import android.widget.ImageView;
  * animExpandDuration
  * animCollapseDuration
  * </pre>
+ * <p>By default, the heights of the widgets are animated, which measures and lays out
+ * the whole parent on each frame. With {@link #setExpandAnimationMode(int)} set to
+ * {@link #EXPAND_MODE_REVEAL}, the expanded geometry is laid out once and only the
+ * drawing bounds and the translation of the expanded layout are animated. The nested
+ * views of the parent take their final position when the animation starts (expanding)
+ * or ends (collapsing). This can also be declared by xml with "resize" or "reveal":</p>
+ * <pre>
+ * expandAnimationMode
+ * </pre>
+ * <p>With {@link #setDragToExpand(boolean)}, the collapsed toolbar can be pulled down:
+ * the expanded geometry is laid out once when the drag starts, then the visible height
+ * follows the finger. On release, a spring started at the velocity of the finger settles
+ * the widget on the frames of the Choreographer, to the expanded mode after a downward
+ * fling or past half of the drag, otherwise back to the collapsed mode. This can be
+ * declared by xml with:</p>
+ * <pre>
+ * dragToExpand
+ * </pre>
+ * <p>With {@link #setLayerPolicy(int)} set to {@link #LAYER_POLICY_TRANSITION}, the
+ * expanded layout, the toolbar and the close icon are drawn in hardware layers for the
+ * length of each transition, then their previous layer types are restored, also when
+ * the transition is interrupted. The views resized on each frame in resize mode and
+ * the views too large to be cached keep their layer types. This can be declared by xml
+ * with "none" or "transition":</p>
+ * <pre>
+ * layerPolicy
+ * </pre>
+ *
+ * <p>The timings of the transitions can be reported with
+ * {@link #setTransitionMetricsListener(TransitionMetricsListener)}: frame count, dropped
+ * frames, max and 95th percentile frame times, layout passes and duration. Without
+ * listener, nothing is recorded.</p>
+ *
+ * <p>The views of the app can follow the widget with
+ * {@link #addOnExpandProgressListener(OnExpandProgressListener)}: the listeners get the
+ * progress from the frames of the widget (animations, drag, settling and restored state),
+ * so they don't need their own animators.</p>
+ *
+ * <p>The views of the expanded layout or of the toolbar can also be attached to the
+ * transitions with {@link #addExpandTransform(View, ExpandTransform)}: alpha,
+ * translations and scale over a range of the progress, applied in the same frames.</p>
  *
  * <h3>CollapsingToolbarLayout:</h3>
  * <p>This library uses the CollapsingToolbarLayout and in order to be customizable,
@@ -144,29 +290,167 @@ import android.widget.ImageView;
  * R.styleable#AppBarrr_toolbarTitleCollapseStyle
  * R.styleable#AppBarrr_toolbarTitleExpandStyle
  * R.styleable#AppBarrr_hideWhenTouchOutside
+ * R.styleable#AppBarrr_expandAnimationMode
+ * R.styleable#AppBarrr_expandLayoutInflation
+ * R.styleable#AppBarrr_prewarmExpandLayout
+ * R.styleable#AppBarrr_inflationFrameBudget
+ * R.styleable#AppBarrr_useMaskView
+ * R.styleable#AppBarrr_scrimColor
+ * R.styleable#AppBarrr_dragToExpand
+ * R.styleable#AppBarrr_layerPolicy
  * </pre>
  *
+ * <h3>Behavior:</h3>
+ * <p>The widget uses {@link AppBarrrBehavior} by default, which locks the bar while the
+ * expanded layout is shown and keeps the expanded content scrollable.</p>
+ *
  * @see android.support.design.widget.AppBarLayout
  * @see android.support.design.widget.CollapsingToolbarLayout
  * @see android.support.v7.widget.Toolbar
+ * @see AppBarrrBehavior
  */
+@CoordinatorLayout.DefaultBehavior(AppBarrrBehavior.class)
 public class AppBarrr extends AppBarLayout {
 
     /**
-     * Initial AppBarLayout's height
+     * Animation mode which changes the widgets height on each frame
+     */
+    public static final int EXPAND_MODE_RESIZE = 0;
+
+    /**
+     * Animation mode which lays out the final heights once and
+     * animates the drawing bounds only
+     */
+    public static final int EXPAND_MODE_REVEAL = 1;
+
+    /**
+     * Expanded layout inflated with the widget
+     */
+    public static final int INFLATE_EAGER = 0;
+
+    /**
+     * Expanded layout inflated on its first showing
+     */
+    public static final int INFLATE_LAZY = 1;
+
+    /**
+     * Expanded layout inflated ahead of time on a background thread
+     */
+    public static final int INFLATE_ASYNC = 2;
+
+    /**
+     * Expanded layout inflated with the widget, its stubs
+     * inflated across the next frames
+     */
+    public static final int INFLATE_STAGED = 3;
+
+    /**
+     * Default number of inflated panels kept
+     */
+    public static final int DEFAULT_PANEL_CACHE_SIZE = 3;
+
+    /**
+     * Default time budget per frame of the staged inflation
+     */
+    public static final long DEFAULT_INFLATION_FRAME_BUDGET = 8;
+
+    /**
+     * Layer policy which keeps the layer types of the views
+     */
+    public static final int LAYER_POLICY_NONE = 0;
+
+    /**
+     * Layer policy which draws the views in hardware layers
+     * for the length of a transition
+     */
+    public static final int LAYER_POLICY_TRANSITION = 1;
+
+    /**
+     * Listener notified with the timings of each transition
+     */
+    public interface TransitionMetricsListener {
+        /**
+         * Called when an expanding or collapsing transition ends
+         *
+         * @param appBarrr The widget
+         * @param metrics Timings of the transition
+         */
+        void onTransitionMetrics(AppBarrr appBarrr, TransitionMetrics metrics);
+    }
+
+    /**
+     * Listener notified with the progress of the widget on each frame
+     * it changes, from the widget's own frames
+     */
+    public interface OnExpandProgressListener {
+        /**
+         * Called when the progress of the widget changes
+         *
+         * @param appBarrr The widget
+         * @param fraction Progress, from 0 when collapsed to 1 when expanded
+         * @param expanding True if the progress goes toward the expanded mode
+         */
+        void onExpandProgress(AppBarrr appBarrr, float fraction, boolean expanding);
+    }
+
+    /**
+     * Listener notified when the widget releases its collapsed
+     * expanded layout on memory pressure
      */
-    private static int APPBAR_START_HEIGHT;
+    public interface MemoryReleaseListener {
+        /**
+         * Called when the expanded layout and the kept panels are released
+         *
+         * @param appBarrr The widget
+         * @param level Trim level received, as ComponentCallbacks2's levels
+         * @param releasedPanels Number of panels removed from the widget
+         * @param releasedViews Number of views in the released panels
+         */
+        void onMemoryReleased(AppBarrr appBarrr, int level, int releasedPanels,
+                              int releasedViews);
+    }
+
+    /**
+     * Factory of a view created in code, used by the {@link Builder}
+     *
+     * @param <V> Type of the view
+     */
+    public interface ViewFactory<V extends View> {
+        /**
+         * Creates the view
+         *
+         * @param context Context of the widget
+         * @param parent Container of the view, not attached to
+         * @return The view created
+         */
+        V createView(Context context, ViewGroup parent);
+    }
+
+    /**
+     * State and sequencing of the widget, independent of the views
+     */
+    private final ExpandController mController = new ExpandController(new ControllerHost());
 
     /**
-     * Initial Toolbar's height
+     * Geometry of this widget
      */
-    private static int TOOLBAR_START_HEIGHT;
+    private final ExpandGeometry mGeometry = mController.getGeometry();
 
     /**
      * Default toolbar
      */
     private Toolbar mToolbar;
 
+    /**
+     * Layout resource of the toolbar
+     */
+    private int mToolbarRes;
+
+    /**
+     * Shared timeline which moves the appbar and the toolbar
+     */
+    private ExpandTimeline mTimeline;
+
     /**
      * Default close icon
      */
@@ -183,9 +467,134 @@ public class AppBarrr extends AppBarLayout {
     private View mExpandLayout;
 
     /**
-     * Max size height of expanded layout
+     * Layout resource of the expanded layout
+     */
+    private int mExpandLayoutRes;
+
+    /**
+     * Factory of the expanded layout created in code, null if inflated
+     */
+    private ViewFactory<? extends View> mExpandLayoutFactory;
+
+    /**
+     * Pending idle handler which prewarms the expanded layout,
+     * null if not requested
+     */
+    private MessageQueue.IdleHandler mPrewarmHandler;
+
+    /**
+     * True if a prewarm waits for the initial heights, it is
+     * requested again once the widget is measured
+     */
+    private boolean mPrewarmWaiting = false;
+
+    /**
+     * True if the expanded layout is prewarmed when attached
+     */
+    private boolean mPrewarmOnAttach = false;
+
+    /**
+     * True if a saved expanded mode waits for the geometry
+     */
+    private boolean mRestorePending = false;
+
+    /**
+     * Inflation mode of the expanded layout, eager by default
+     */
+    private int mExpandLayoutInflation = INFLATE_EAGER;
+
+    /**
+     * Inflater of the stubs in staged mode, null until needed
+     */
+    private StagedInflater mStagedInflater;
+
+    /**
+     * Time budget per frame of the staged inflation, in milliseconds
+     */
+    private long mInflationFrameBudget = DEFAULT_INFLATION_FRAME_BUDGET;
+
+    /**
+     * Max number of inflated panels kept in the container
+     */
+    private int mPanelCacheSize = DEFAULT_PANEL_CACHE_SIZE;
+
+    /**
+     * Inflated panels by layout resource id, in access order, the
+     * least recently used are removed from the container
+     */
+    private final LinkedHashMap<Integer, View> mPanels =
+            new LinkedHashMap<Integer, View>(0, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, View> eldest) {
+            if (size() <= mPanelCacheSize || isPinnedPanel(eldest.getValue()))
+                return false;
+
+            removePanel(eldest.getValue());
+            return true;
+        }
+    };
+
+    /**
+     * Panel fading out after a switch, kept until the end
+     * of the cross-fade, null if none
+     */
+    private View mFadingPanel;
+
+    /**
+     * Memory release listener, null if not set
+     */
+    private MemoryReleaseListener mMemoryReleaseListener;
+
+    /**
+     * Ids and transforms of the released views, attached again
+     * to the views of the rebuilt layout
+     */
+    private final ArrayList<Integer> mReleasedTransformIds = new ArrayList<>();
+    private final ArrayList<ExpandTransform> mReleasedTransforms = new ArrayList<>();
+
+    /**
+     * Releases the collapsed expanded layout on memory pressure,
+     * registered while attached
+     */
+    private final ComponentCallbacks2 mMemoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+                releaseExpandLayout(level);
+            }
+        }
+
+        @Override
+        public void onLowMemory() {
+            releaseExpandLayout(TRIM_MEMORY_COMPLETE);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+            // handled by the widget
+        }
+    };
+
+    /**
+     * Content bound into the expanded layout, null without binder
      */
-    private int mExpandMaxSize;
+    private ContentBinding<?> mContentBinding;
+
+    /**
+     * Max number of prepared contents kept by the binding
+     */
+    private int mContentCacheSize = ContentBinding.DEFAULT_CACHE_SIZE;
+
+    /**
+     * Binds the content once the staged inflation is done
+     */
+    private final Runnable mApplyContentRunnable = new Runnable() {
+        @Override
+        public void run() {
+            restoreTransforms();
+            applyContent();
+        }
+    };
 
     /**
      * Default collapsingtoolbar layout
@@ -198,14 +607,160 @@ public class AppBarrr extends AppBarLayout {
     private View mMaskView;
 
     /**
-     * Default duration of expanding animation
+     * True if the mask view is used to catch outside touches
+     */
+    private boolean mUseMaskView = true;
+
+    /**
+     * Scrim drawn over the nested views in mask-free mode,
+     * null if not set
+     */
+    private ColorDrawable mScrim;
+
+    /**
+     * Listener which hides the expanded layout
+     */
+    private final OnClickListener mHideListener = new OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            hideExpandedLayout();
+        }
+    };
+
+    /**
+     * True if a show or hide command waits for the next frame
+     */
+    private boolean mCommandPending = false;
+
+    /**
+     * Mode requested by the last command
+     */
+    private boolean mTargetExpanded = false;
+
+    /**
+     * Frame callback which resolves the commands of a frame
+     * to their last requested mode
+     */
+    private final Choreographer.FrameCallback mCommandCallback =
+            new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            resolveCommand();
+        }
+    };
+
+    /**
+     * Restores the saved state before the first draw, once the
+     * layout has given the geometry
+     */
+    private final ViewTreeObserver.OnPreDrawListener mRestoreListener =
+            new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            boolean pending = mRestorePending;
+            // geometry not known yet, until the next layout
+            if (pending && !restorePendingState())
+                return true;
+
+            getViewTreeObserver().removeOnPreDrawListener(this);
+            // the expanded frame is laid out and drawn instead
+            return !pending;
+        }
+    };
+
+    /**
+     * Parent observed for its size changes, null if detached
+     */
+    private View mObservedParent;
+
+    /**
+     * Updates the geometry when the parent is resized (multi-window,
+     * foldable postures...)
+     */
+    private final OnLayoutChangeListener mParentLayoutListener = new OnLayoutChangeListener() {
+        @Override
+        public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                   int oldLeft, int oldTop, int oldRight, int oldBottom) {
+            if (bottom - top != oldBottom - oldTop) {
+                onParentResized(bottom - top);
+            }
+        }
+    };
+
+    /**
+     * Frame callback shared by all the transitions
+     */
+    private final TransitionCallback mTransitionCallback = new TransitionCallback();
+
+    /**
+     * Current animation mode, resize by default
+     */
+    private int mExpandAnimationMode = EXPAND_MODE_RESIZE;
+
+    /**
+     * Current layer policy, none by default
+     */
+    private int mLayerPolicy = LAYER_POLICY_NONE;
+
+    /**
+     * Views promoted to hardware layers during the running transition
+     * and their previous layer types
+     */
+    private final View[] mLayerViews = new View[3];
+    private final int[] mLayerTypes = new int[3];
+
+    /**
+     * Visible height of the widget in reveal mode, -1 if
+     * the widget is not revealing
      */
-    private long mExpandDuration;
+    private int mRevealHeight = -1;
 
     /**
-     * Default duration of collapsing animation
+     * Outline provider replaced while revealing, since API 21
      */
-    private long mCollapseDuration;
+    private Object mSavedOutlineProvider;
+    private Object mRevealOutlineProvider;
+    private boolean mRevealOutlined = false;
+
+    /**
+     * Expand progress listeners, in their adding order
+     */
+    private final ArrayList<OnExpandProgressListener> mProgressListeners = new ArrayList<>();
+
+    /**
+     * Views transformed with the progress, and their transforms
+     */
+    private final ArrayList<View> mTransformViews = new ArrayList<>();
+    private final ArrayList<ExpandTransform> mTransforms = new ArrayList<>();
+
+    /**
+     * Last progress given to the listeners
+     */
+    private float mDispatchedProgress = 0.f;
+
+    /**
+     * Transition metrics listener, null if not set
+     */
+    private TransitionMetricsListener mMetricsListener;
+
+    /**
+     * Recorder of the transition timings, null if no listener
+     */
+    private TransitionMetricsRecorder mMetricsRecorder;
+
+    /**
+     * Frame callback which records the transition frames
+     */
+    private final Choreographer.FrameCallback mMetricsFrameCallback =
+            new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mMetricsRecorder.onFrame(frameTimeNanos);
+            if (mMetricsRecorder.isRecording()) {
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+    };
 
     /**
      * True if the locked view received a click listener to
@@ -214,9 +769,66 @@ public class AppBarrr extends AppBarLayout {
     private boolean mHideWhenTouchOutside = true;
 
     /**
-     * True if the expanded layout is visible
+     * True if the toolbar can be pulled down to expand the widget
+     */
+    private boolean mDragToExpand = false;
+
+    /**
+     * Distance of a touch before it becomes a drag
+     */
+    private final int mTouchSlop;
+
+    /**
+     * Velocity of the drag, obtained once and cleared for each gesture
+     */
+    private VelocityTracker mVelocityTracker;
+
+    /**
+     * Position of the gesture when the drag started
+     */
+    private float mDragStartX;
+    private float mDragStartY;
+
+    /**
+     * Height covered by the drag, from collapsed to expanded
+     */
+    private int mDragRange;
+
+    /**
+     * Spring which settles the widget when the drag is released
+     */
+    private final ExpandSpring mSpring = new ExpandSpring();
+
+    /**
+     * True while the spring runs
+     */
+    private boolean mSettling = false;
+
+    /**
+     * Time of the last settling frame, 0 before the first one
+     */
+    private long mLastSettleFrameNanos;
+
+    /**
+     * Settles the widget on each frame until the spring is at rest
      */
-    private boolean mIsExpanded = false;
+    private final Choreographer.FrameCallback mSettleCallback =
+            new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            long delta = mLastSettleFrameNanos != 0
+                    ? frameTimeNanos - mLastSettleFrameNanos : getFrameIntervalNanos();
+            mLastSettleFrameNanos = frameTimeNanos;
+            boolean atRest = mSpring.step(delta);
+            mController.setProgress(mSpring.getPosition());
+            setDragProgress(mController.getProgress());
+            if (atRest) {
+                endSettling();
+            } else {
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+    };
 
     /**
      * Current activity
@@ -233,6 +845,7 @@ public class AppBarrr extends AppBarLayout {
 
     public AppBarrr(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs);
+        mTouchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
 
         // set id and save state
         if (getId() == -1)
@@ -270,21 +883,29 @@ public class AppBarrr extends AppBarLayout {
             // add icon to layout
             mContainer.addView(mCloseIcon, mContainer.getChildCount());
             // close expanded layout when close icon is clicked
-            mCloseIcon.setOnClickListener(new OnClickListener() {
-                @Override public void onClick(View v) {
-                    hideExpandedLayout();
-                }
-            });
+            mCloseIcon.setOnClickListener(mHideListener);
             // hide the close icon by default
             mCloseIcon.setVisibility(View.GONE);
         }
 
         // expanded layout
         if (a.hasValue(R.styleable.AppBarrr_expandLayout)) {
-            setExpandLayout(a.getResourceId(R.styleable.AppBarrr_expandLayout, 0));
-            mContainer.addView(mExpandLayout, mContainer.getChildCount());
-            // hide the expanded layout by default
-            mExpandLayout.setVisibility(View.GONE);
+            mExpandLayoutRes = a.getResourceId(R.styleable.AppBarrr_expandLayout, 0);
+            mExpandLayoutInflation = a.getInt(R.styleable.AppBarrr_expandLayoutInflation,
+                    INFLATE_EAGER);
+            mInflationFrameBudget = a.getInt(R.styleable.AppBarrr_inflationFrameBudget,
+                    (int) DEFAULT_INFLATION_FRAME_BUDGET);
+            switch (mExpandLayoutInflation) {
+                case INFLATE_LAZY:
+                    // inflated on first showing
+                    break;
+                case INFLATE_ASYNC:
+                    setExpandLayoutAsync(mExpandLayoutRes);
+                    break;
+                default:
+                    setExpandLayout(mExpandLayoutRes);
+                    break;
+            }
         } else {
             throw new NullPointerException("The AppBarrr needs an expanded layout, sets with \"app:expandLayout\"");
         }
@@ -294,10 +915,20 @@ public class AppBarrr extends AppBarLayout {
             setExpandMaxSize(a.getDimension(R.styleable.AppBarrr_expandMaxSize, 0.f));
         }
 
+        // prewarm when attached
+        mPrewarmOnAttach = a.getBoolean(R.styleable.AppBarrr_prewarmExpandLayout, false);
+
         // anim durations
         setExpandDuration(a.getInteger(R.styleable.AppBarrr_animExpandDuration, 300));
         setCollapseDuration(a.getInteger(R.styleable.AppBarrr_animCollapseDuration, 300));
 
+        // anim mode
+        setExpandAnimationMode(a.getInt(R.styleable.AppBarrr_expandAnimationMode,
+                EXPAND_MODE_RESIZE));
+
+        // layer policy
+        setLayerPolicy(a.getInt(R.styleable.AppBarrr_layerPolicy, LAYER_POLICY_NONE));
+
         // content scrim
         if (a.hasValue(R.styleable.AppBarrr_contentScrimBar)) {
             setContentScrim(a.getDrawable(R.styleable.AppBarrr_contentScrimBar));
@@ -320,6 +951,15 @@ public class AppBarrr extends AppBarLayout {
             hideWhenTouchOutside(a.getBoolean(R.styleable.AppBarrr_hideWhenTouchOutside, true));
         }
 
+        // mask-free mode
+        setUseMaskView(a.getBoolean(R.styleable.AppBarrr_useMaskView, true));
+        if (a.hasValue(R.styleable.AppBarrr_scrimColor)) {
+            setScrimColor(a.getColor(R.styleable.AppBarrr_scrimColor, Color.TRANSPARENT));
+        }
+
+        // drag mode
+        setDragToExpand(a.getBoolean(R.styleable.AppBarrr_dragToExpand, false));
+
         // default scroll flags
         setScrollFlags(-1);
 
@@ -331,16 +971,103 @@ public class AppBarrr extends AppBarLayout {
     }
 
     /**
-     * Sets the default toolbar's layout
+     * Creates the widget in code from a builder, without inflating
+     * nor parsing any attribute
      *
-     * @param resId Id of layout resource
+     * @param builder Views and configuration of the widget
      */
-    private void setToolbar(int resId) {
-        mToolbar = (Toolbar) activity
-                .getLayoutInflater()
-                .inflate(resId, mContainer, false);
-        if (mToolbar.getId() == -1) {
-            mToolbar.setId(R.id.layout_default_toolbar);
+    private AppBarrr(Builder builder) {
+        super(builder.mContext);
+        mTouchSlop = ViewConfiguration.get(builder.mContext).getScaledTouchSlop();
+
+        // set id and save state
+        setId(R.id.layout_default_appbarrr);
+        setSaveEnabled(true);
+
+        // current activity context
+        activity = getActivity(getContext());
+
+        // collapsingtoolbar container, as declared in appbarrrview.xml
+        mContainer = new CollapsingToolbarLayout(builder.mContext);
+        mContainer.setId(R.id.collapsing_barrr);
+        mContainer.setFitsSystemWindows(true);
+        addView(mContainer, new LayoutParams(
+                LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+
+        // toolbar
+        mToolbar = builder.mToolbar != null ? builder.mToolbar
+                : builder.mToolbarFactory.createView(builder.mContext, mContainer);
+        if (mToolbar.getId() == -1) {
+            mToolbar.setId(R.id.layout_default_toolbar);
+        }
+        mContainer.addView(mToolbar, mContainer.getChildCount());
+        // associate toolbar with actionbar
+        if (activity instanceof AppCompatActivity) {
+            ((AppCompatActivity) activity).setSupportActionBar(mToolbar);
+        }
+
+        // close icon
+        if (builder.mCloseIcon != null) {
+            setCloseIcon(builder.mCloseIcon);
+            mContainer.addView(mCloseIcon, mContainer.getChildCount());
+            mCloseIcon.setOnClickListener(mHideListener);
+            mCloseIcon.setVisibility(View.GONE);
+        }
+
+        // expanded layout
+        mExpandLayoutInflation = builder.mExpandLayoutInflation;
+        if (builder.mExpandLayout != null) {
+            attachExpandLayout(builder.mExpandLayout);
+        } else {
+            mExpandLayoutFactory = builder.mExpandLayoutFactory;
+            if (mExpandLayoutInflation != INFLATE_LAZY) {
+                ensureExpandLayout();
+            }
+        }
+
+        // configuration
+        if (builder.mExpandMaxSize > 0.f) {
+            setExpandMaxSize(builder.mExpandMaxSize);
+        }
+        mPrewarmOnAttach = builder.mPrewarm;
+        setExpandDuration(builder.mExpandDuration);
+        setCollapseDuration(builder.mCollapseDuration);
+        setExpandAnimationMode(builder.mExpandAnimationMode);
+        setLayerPolicy(builder.mLayerPolicy);
+        if (builder.mContentScrim != null) {
+            setContentScrim(builder.mContentScrim);
+        }
+        if (builder.mTitleExpandStyle != 0) {
+            mContainer.setExpandedTitleTextAppearance(builder.mTitleExpandStyle);
+        }
+        if (builder.mTitleCollapseStyle != 0) {
+            mContainer.setCollapsedTitleTextAppearance(builder.mTitleCollapseStyle);
+        }
+        hideWhenTouchOutside(builder.mHideWhenTouchOutside);
+        setUseMaskView(builder.mUseMaskView);
+        setScrimColor(builder.mScrimColor);
+        setDragToExpand(builder.mDragToExpand);
+
+        // default scroll flags
+        setScrollFlags(-1);
+
+        // init behavior
+        initialize();
+    }
+
+    /**
+     * Sets the default toolbar's layout
+     *
+     * @param resId Id of layout resource
+     */
+    private void setToolbar(int resId) {
+        mToolbarRes = resId;
+        View pooled = ViewPool.acquire(activity, resId);
+        mToolbar = pooled != null ? (Toolbar) pooled : (Toolbar) activity
+                .getLayoutInflater()
+                .inflate(resId, mContainer, false);
+        if (mToolbar.getId() == -1) {
+            mToolbar.setId(R.id.layout_default_toolbar);
         }
     }
 
@@ -362,8 +1089,10 @@ public class AppBarrr extends AppBarLayout {
         mCloseIcon = new ImageView(activity);
         mCloseIcon.setId(R.id.icon_default_close_navigation);
         mCloseIcon.setImageDrawable(drawable);
-        if (TOOLBAR_START_HEIGHT > 0) {
-            setCloseIconParams();
+        int padding = 34; // strict padding
+        mCloseIcon.setPadding(padding, padding, padding, padding);
+        if (mGeometry.hasToolbarStartHeight()) {
+            setCloseIconParams(false);
         }
     }
 
@@ -383,350 +1112,1691 @@ public class AppBarrr extends AppBarLayout {
      * @param resId Id of layout resource
      */
     private void setExpandLayout(int resId) {
-        mExpandLayout = activity
+        View pooled = ViewPool.acquire(activity, resId);
+        attachExpandLayout(pooled != null ? pooled : activity
                 .getLayoutInflater()
-                .inflate(resId, mContainer, false);
+                .inflate(resId, mContainer, false));
+    }
+
+    /**
+     * Sets the time budget per frame of the staged inflation, at
+     * least one stub is inflated per frame whatever the budget
+     * By default, the budget is 8ms
+     *
+     * @param budget Milliseconds per frame
+     */
+    public void setInflationFrameBudget(long budget) {
+        mInflationFrameBudget = budget;
+    }
+
+    /**
+     * Gets the time budget per frame of the staged inflation
+     *
+     * @return Milliseconds per frame
+     */
+    public long getInflationFrameBudget() {
+        return this.mInflationFrameBudget;
+    }
+
+    /**
+     * Inflates the custom layout on a background thread, it is attached
+     * on the main thread when the inflation is done
+     *
+     * @param resId Id of layout resource
+     */
+    private void setExpandLayoutAsync(int resId) {
+        new AsyncLayoutInflater(activity).inflate(resId, mContainer,
+                new AsyncLayoutInflater.OnInflateFinishedListener() {
+            @Override
+            public void onInflateFinished(View view, int resid, ViewGroup parent) {
+                // ignore if already inflated on showing, switched or detached
+                if (mExpandLayout == null && mContainer == parent
+                        && resid == mExpandLayoutRes) {
+                    attachExpandLayout(view);
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds the inflated custom layout to the container, hidden
+     *
+     * @param view Expanded layout inflated
+     */
+    private void attachExpandLayout(View view) {
+        mExpandLayout = view;
         if (mExpandLayout.getId() == -1) {
             mExpandLayout.setId(R.id.layout_default_expanded);
         }
+        // kept under the close icon
+        int index = mCloseIcon != null && mCloseIcon.getParent() == mContainer
+                ? mContainer.indexOfChild(mCloseIcon) : mContainer.getChildCount();
+        mContainer.addView(mExpandLayout, index);
+        mPanels.put(mExpandLayoutRes, mExpandLayout);
+        // hide the expanded layout by default
+        mExpandLayout.setVisibility(View.GONE);
+        // params are already known from the toolbar
+        if (mGeometry.hasToolbarStartHeight()) {
+            setExpandedLayoutParams(false);
+        }
+        // the stubs are inflated on the next frames
+        if (mExpandLayoutInflation == INFLATE_STAGED) {
+            if (mStagedInflater == null) {
+                mStagedInflater = new StagedInflater(activity.getLayoutInflater(),
+                        mApplyContentRunnable);
+            }
+            mStagedInflater.start(mExpandLayout, mInflationFrameBudget);
+        }
+        restoreTransforms();
+        applyContent();
     }
 
     /**
-     * Returns the default expanded layout
+     * Switches the expanded layout to the panel of a layout resource,
+     * inflated or taken from the kept panels. While expanded, the panels
+     * are cross-faded, otherwise the panel is shown on the next showing.
+     * In lazy mode, a panel which is not kept is inflated when shown
      *
-     * @return The locked view
+     * @param resId Id of layout resource
      */
-    public View getExpandLayout() {
-        return this.mExpandLayout;
+    public void showPanel(int resId) {
+        if (resId == mExpandLayoutRes && mExpandLayout != null)
+            return;
+
+        View previous = mExpandLayout;
+        View panel = mPanels.get(resId);
+        // not evicted by the next panel before fading out
+        mFadingPanel = previous;
+        mExpandLayoutRes = resId;
+        mExpandLayoutFactory = null;
+        mExpandLayout = null;
+        if (panel != null && panel.getParent() == mContainer) {
+            // fading out from a previous switch
+            panel.animate().cancel();
+            panel.setAlpha(1.f);
+            mExpandLayout = panel;
+            if (mGeometry.hasToolbarStartHeight()) {
+                setExpandedLayoutParams(false);
+            }
+            applyContent();
+        } else if (mController.isExpanded() || mExpandLayoutInflation != INFLATE_LAZY) {
+            setExpandLayout(resId);
+        }
+
+        if (previous != null) {
+            crossFadePanels(previous, mExpandLayout);
+        }
     }
 
     /**
-     * Sets the custom layout max size
+     * Gets the layout resource of the current panel
      *
-     * @param maxSize Max size height of expanded layout
+     * @return Id of layout resource
      */
-    public void setExpandMaxSize(float maxSize) {
-        mExpandMaxSize = (int) maxSize;
+    public int getPanel() {
+        return this.mExpandLayoutRes;
     }
 
     /**
-     * Gets the custom layout max size
+     * Sets the max number of inflated panels kept in the container,
+     * the least recently shown are removed. A panel fading out is
+     * removed at the end of its cross-fade
+     * By default, 3 panels are kept
      *
-     * @return The max size height of expanded layout provides by xml
-     * or a default size if the max size is larger than the parent
+     * @param size Max number of panels, at least 1
      */
-    public int getExpandMaxSize() {
-        View parent = (View) getParent();
-        if (this.mExpandMaxSize == 0.f || this.mExpandMaxSize > parent.getHeight()) {
-            this.mExpandMaxSize = parent.getHeight() - TOOLBAR_START_HEIGHT;
+    public void setPanelCacheSize(int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("The panel cache size must be at least 1");
+
+        mPanelCacheSize = size;
+        trimPanels();
+    }
+
+    /**
+     * Removes the least recently shown panels over the cache size,
+     * except the current panel and the one fading out
+     */
+    private void trimPanels() {
+        Iterator<View> panels = mPanels.values().iterator();
+        while (mPanels.size() > mPanelCacheSize && panels.hasNext()) {
+            View panel = panels.next();
+            if (!isPinnedPanel(panel)) {
+                removePanel(panel);
+                panels.remove();
+            }
         }
-        return this.mExpandMaxSize;
     }
 
     /**
-     * Sets the default duration of expanding animation
-     * If not set or less than/equal to 0ms, default is 300ms
+     * Returns true if a panel can't be evicted, being shown
+     * or fading out
      *
-     * @param duration Milliseconds in Long
+     * @param panel Panel to check
+     * @return Boolean of the pinned state
      */
-    public void setExpandDuration(long duration) {
-        mExpandDuration = duration;
+    private boolean isPinnedPanel(View panel) {
+        return panel == mExpandLayout || panel == mFadingPanel;
     }
 
     /**
-     * Sets the default duration of collapsing animation
-     * If not set or less than/equal to 0ms, default is 300ms
+     * Hides the previous panel and shows the next one, with a
+     * cross-fade drawn in hardware layers while expanded
      *
-     * @param duration Milliseconds in Long
+     * @param previous Panel hidden
+     * @param next Panel shown, null if not inflated yet
      */
-    public void setCollapseDuration(long duration) {
-        mCollapseDuration = duration;
+    private void crossFadePanels(final View previous, View next) {
+        previous.animate().cancel();
+        if (!mController.isExpanded() || next == null) {
+            previous.setVisibility(View.GONE);
+            previous.setAlpha(1.f);
+            unpinPanel(previous);
+            return;
+        }
+
+        long duration = getResources().getInteger(android.R.integer.config_shortAnimTime);
+        next.setAlpha(0.f);
+        next.setVisibility(View.VISIBLE);
+        next.animate().alpha(1.f).setDuration(duration).withLayer();
+        previous.animate().alpha(0.f).setDuration(duration).withLayer()
+                .withEndAction(new Runnable() {
+                    @Override
+                    public void run() {
+                        previous.setVisibility(View.GONE);
+                        previous.setAlpha(1.f);
+                        unpinPanel(previous);
+                    }
+                });
     }
 
     /**
-     * Sets scroll flags to collapsingtoolbar
+     * Releases a panel hidden after a switch, evicted if
+     * the cache is over its size
      *
-     * @param flags Scroll behavior flags
+     * @param panel Panel hidden
      */
-    public void setScrollFlags(@LayoutParams.ScrollFlags int flags) {
-        AppBarLayout.LayoutParams params =
-                (AppBarLayout.LayoutParams)
-                mContainer.getLayoutParams();
-        // default flags if not set
-        if (flags == -1) {
-            flags = LayoutParams.SCROLL_FLAG_SCROLL
-                    | LayoutParams.SCROLL_FLAG_EXIT_UNTIL_COLLAPSED;
+    private void unpinPanel(View panel) {
+        if (panel == mFadingPanel) {
+            mFadingPanel = null;
+            trimPanels();
         }
-        params.setScrollFlags(flags);
-        mContainer.setLayoutParams(params);
     }
 
     /**
-     * Sets content scrim to collapsingtoolbar
+     * Removes an evicted panel from the container
      *
-     * @param drawable Drawable of content scrim
+     * @param panel Panel to remove
      */
-    public void setContentScrim(Drawable drawable) {
-        mContainer.setContentScrim(drawable);
+    private void removePanel(View panel) {
+        if (panel == mFadingPanel) {
+            mFadingPanel = null;
+        }
+        panel.animate().cancel();
+        if (panel.getParent() == mContainer) {
+            mContainer.removeView(panel);
+        }
     }
 
     /**
-     * Sets a click listener to the nested locked view to hide
-     * the expanded layout
+     * Inflates synchronously the custom layout if it
+     * is not inflated yet
      */
-    public void hideWhenTouchOutside(boolean hideWhenTouchOutside) {
-        mHideWhenTouchOutside = hideWhenTouchOutside;
+    private void ensureExpandLayout() {
+        if (mExpandLayout != null)
+            return;
+
+        if (mExpandLayoutFactory != null) {
+            attachExpandLayout(mExpandLayoutFactory.createView(getContext(), mContainer));
+        } else {
+            setExpandLayout(mExpandLayoutRes);
+        }
     }
 
     /**
-     * Gets the current state of the nested locked view to hide
-     * the expanded layout
-     * @return Boolean of the state to hide when the user touches outside
+     * Prepares the expanded layout when the main thread is idle: it is
+     * inflated if needed, then measured and laid out at the max size
+     * while hidden. Being shown forces a new measure of its root only,
+     * the children are not measured again with the same size
      */
-    public boolean isHiddenWhenTouchOutside() {
-        return this.mHideWhenTouchOutside;
+    public void prewarm() {
+        // already requested
+        if (mPrewarmHandler != null)
+            return;
+
+        mPrewarmWaiting = false;
+        mPrewarmHandler = new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                // give up if detached before the idle slot
+                if (!ViewCompat.isAttachedToWindow(AppBarrr.this) || mContainer == null) {
+                    mPrewarmHandler = null;
+                    return false;
+                }
+                // wait for the initial heights, without staying in the
+                // queue of a widget which is never measured (gone...)
+                if (!mGeometry.isMeasured() || mContainer.getWidth() == 0) {
+                    mPrewarmHandler = null;
+                    mPrewarmWaiting = true;
+                    return false;
+                }
+                ensureExpandLayout();
+                measureExpandLayout();
+                mPrewarmHandler = null;
+                return false;
+            }
+        };
+        Looper.myQueue().addIdleHandler(mPrewarmHandler);
+    }
+
+    /**
+     * Cancels the pending prewarm, if any
+     */
+    private void cancelPrewarm() {
+        mPrewarmWaiting = false;
+        if (mPrewarmHandler != null) {
+            Looper.myQueue().removeIdleHandler(mPrewarmHandler);
+            mPrewarmHandler = null;
+        }
+    }
+
+    /**
+     * Measures and lays out the hidden expanded layout
+     * with its expanded geometry
+     */
+    private void measureExpandLayout() {
+        // already visible, nothing to prepare
+        if (mExpandLayout.getVisibility() != View.GONE)
+            return;
+
+        // kept gone: being shown requests a layout of the root only,
+        // the children keep these measures
+        int width = mContainer.getWidth();
+        int height = getExpandMaxSize();
+        ViewGroup.MarginLayoutParams params =
+                (ViewGroup.MarginLayoutParams) mExpandLayout.getLayoutParams();
+        mExpandLayout.measure(
+                getChildMeasureSpec(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                        params.leftMargin + params.rightMargin, params.width),
+                getChildMeasureSpec(MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY),
+                        params.topMargin + params.bottomMargin, params.height));
+        mExpandLayout.layout(params.leftMargin, params.topMargin,
+                params.leftMargin + mExpandLayout.getMeasuredWidth(),
+                params.topMargin + mExpandLayout.getMeasuredHeight());
     }
 
     /**
-     * Sets the current state of expanded layout
-     * True if visible, false otherwise
+     * Returns the default expanded layout, it could be null if the
+     * layout is inflated lazily or asynchronously and is not ready yet
      *
-     * @param isExpanded Boolean of the visible state
+     * @return The locked view, or null if not inflated
      */
-    private void setExpandState(boolean isExpanded) {
-        this.mIsExpanded = isExpanded;
+    public View getExpandLayout() {
+        return this.mExpandLayout;
     }
 
     /**
-     * Gets the current state of expanded layout
-     * True if visible, false otherwise
+     * Sets the binder of the contents displayed in the expanded
+     * layout, null to remove it
      *
-     * @return Boolean of the current state
+     * @param binder Binder of the contents
+     * @param <T> Type of the prepared contents
      */
-    public boolean isExpanded() {
-        return this.mIsExpanded;
+    public <T> void setContentBinder(ExpandContentBinder<T> binder) {
+        mContentBinding = binder != null ? new ContentBinding<T>(binder) : null;
+        if (mContentBinding != null) {
+            mContentBinding.setMaxSize(mContentCacheSize);
+        }
     }
 
     /**
-     * Sets the initial heights, which will be used
-     * to retrieve the starting states
+     * Displays the content of a key in the expanded layout, it is prepared
+     * if not kept and bound when the layout is ready. Nothing is done if
+     * the same key is already bound
+     *
+     * @param key Key of the content
      */
-    private void setInitialHeights() {
-        // set minimum heights
-        APPBAR_START_HEIGHT = this.getHeight();
-        TOOLBAR_START_HEIGHT = mToolbar.getLayoutParams().height;
+    public void bindContent(Object key) {
+        if (mContentBinding == null) {
+            throw new IllegalStateException("The AppBarrr needs a content binder, sets with \"setContentBinder()\"");
+        }
+        mContentBinding.setKey(key);
+        applyContent();
     }
 
     /**
-     * Sets layout params on expanded view
+     * Drops the prepared content of a key, it is prepared again
+     * when needed and bound again if it is displayed
+     *
+     * @param key Key of the content
      */
-    private void setExpandedLayoutParams() {
-        // preparing view parameters
-        CollapsingToolbarLayout.LayoutParams params =
-                (CollapsingToolbarLayout.LayoutParams)
-                mExpandLayout.getLayoutParams();
-        params.topMargin = TOOLBAR_START_HEIGHT;
-        mExpandLayout.setLayoutParams(params);
-        mExpandLayout.setFocusableInTouchMode(true);
+    public void invalidateContent(Object key) {
+        if (mContentBinding != null) {
+            mContentBinding.invalidate(key);
+            applyContent();
+        }
     }
 
     /**
-     * Sets a mask view in the parent container
+     * Sets the max number of prepared contents kept, the least
+     * recently used are evicted
+     * By default, 4 prepared contents are kept
+     *
+     * @param size Max number of prepared contents, at least 1
      */
-    private void setMaskView() {
-        ViewGroup parent = (ViewGroup) getParent();
-        mMaskView = activity
-                .getLayoutInflater()
-                .inflate(R.layout.maskview, parent, false);
-        parent.addView(mMaskView);
+    public void setContentCacheSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The content cache size must be at least 1");
+        }
+        mContentCacheSize = size;
+        if (mContentBinding != null) {
+            mContentBinding.setMaxSize(size);
+        }
     }
 
     /**
-     * Sets layout params on close icon
+     * Binds the current content once the expanded layout is
+     * inflated, including its staged stubs
      */
-    private void setCloseIconParams() {
-        int size = TOOLBAR_START_HEIGHT;
-        int padding = 34; // strict padding
-        CollapsingToolbarLayout.LayoutParams params =
-                new CollapsingToolbarLayout.LayoutParams(size, size);
-        params.gravity = Gravity.START | Gravity.TOP;
-        mCloseIcon.setPadding(padding, padding, padding, padding);
-        mCloseIcon.setLayoutParams(params);
+    private void applyContent() {
+        if (mContentBinding == null || mExpandLayout == null
+                || (mStagedInflater != null && mStagedInflater.isPending()))
+            return;
+
+        mContentBinding.bindTo(mExpandLayout);
+    }
+
+    /**
+     * Sets a listener notified when the collapsed expanded layout is
+     * released on memory pressure, null to remove it
+     *
+     * @param listener Listener of the memory releases
+     */
+    public void setMemoryReleaseListener(MemoryReleaseListener listener) {
+        mMemoryReleaseListener = listener;
     }
 
     /**
-     * SCROLLABLE-HACK: Sets a default touch to allow
-     * scrollable expanded content future usage
+     * Releases the expanded layout and the kept panels while collapsed
+     * and at rest, with their drawables and the prepared contents. The
+     * layout resource or factory is kept, so the layout is inflated again
+     * on the next showing, its content bound again and the transforms of
+     * its views with an id attached again. A layout given as a view can't
+     * be rebuilt and is kept
+     *
+     * @param level Trim level received
      */
-    private void setDefaultTouchEvent() {
-        ViewGroup parent = (ViewGroup) getParent();
-        if (parent.getChildAt(1) != null) {
-            final View nestedSv = parent.getChildAt(1);
-            nestedSv.post(new Runnable() {
-                @Override
-                public void run() {
-                    long downTime = SystemClock.uptimeMillis();
-                    float x = 1.0f;
-                    float y = 1.0f;
-                    int state = 0;
-
-                    MotionEvent evDown = MotionEvent.obtain(downTime, downTime,
-                            MotionEvent.ACTION_DOWN, x, y, state);
-                    MotionEvent evUp = MotionEvent.obtain(downTime, downTime,
-                            MotionEvent.ACTION_UP, x, y, state);
-
-                    nestedSv.dispatchTouchEvent(evDown);
-                    nestedSv.dispatchTouchEvent(evUp);
-                }
-            });
+    private void releaseExpandLayout(int level) {
+        if (isExpanded() || mController.getState() != ExpandController.STATE_COLLAPSED
+                || mController.isDragging() || mSettling)
+            return;
+
+        boolean rebuildable = hasExpandLayoutSource();
+        cancelPrewarm();
+        if (rebuildable && mStagedInflater != null) {
+            mStagedInflater.cancel();
+        }
+
+        int releasedPanels = 0;
+        int releasedViews = 0;
+        Iterator<View> it = mPanels.values().iterator();
+        while (it.hasNext()) {
+            View panel = it.next();
+            if (panel == mExpandLayout && !rebuildable)
+                continue;
+
+            releaseTransforms(panel);
+            releasedViews += countViews(panel);
+            releasedPanels++;
+            removePanel(panel);
+            it.remove();
+        }
+        if (rebuildable) {
+            mExpandLayout = null;
+        }
+        // the prepared contents are prepared again with the layout
+        if (mContentBinding != null) {
+            mContentBinding.clear();
+        }
+
+        if (releasedPanels > 0 && mMemoryReleaseListener != null) {
+            mMemoryReleaseListener.onMemoryReleased(this, level, releasedPanels, releasedViews);
+        }
+    }
+
+    /**
+     * Returns true if the expanded layout can be built, from its
+     * layout resource or its factory
+     *
+     * @return Boolean of the source state
+     */
+    private boolean hasExpandLayoutSource() {
+        return mExpandLayoutRes != 0 || mExpandLayoutFactory != null;
+    }
+
+    /**
+     * Detaches the transforms of the views of a released panel, the
+     * ones with an id are kept for the rebuilt layout
+     *
+     * @param panel Released panel
+     */
+    private void releaseTransforms(View panel) {
+        for (int i = mTransformViews.size() - 1; i >= 0; i--) {
+            View view = mTransformViews.get(i);
+            if (!isDescendant(view, panel))
+                continue;
+
+            if (view.getId() != View.NO_ID) {
+                mReleasedTransformIds.add(view.getId());
+                mReleasedTransforms.add(mTransforms.get(i));
+            }
+            mTransformViews.remove(i);
+            mTransforms.remove(i);
+        }
+    }
+
+    /**
+     * Attaches the released transforms to the views of the rebuilt
+     * layout, the views inflated later are found when staged
+     */
+    private void restoreTransforms() {
+        if (mExpandLayout == null)
+            return;
+
+        for (int i = mReleasedTransformIds.size() - 1; i >= 0; i--) {
+            View view = mExpandLayout.findViewById(mReleasedTransformIds.get(i));
+            if (view != null) {
+                addExpandTransform(view, mReleasedTransforms.get(i));
+                mReleasedTransformIds.remove(i);
+                mReleasedTransforms.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Returns true if a view is the given ancestor or one of its descendants
+     *
+     * @param view The view
+     * @param ancestor The ancestor
+     * @return Boolean of the descendant state
+     */
+    private static boolean isDescendant(View view, View ancestor) {
+        Object current = view;
+        while (current instanceof View) {
+            if (current == ancestor)
+                return true;
+            current = ((View) current).getParent();
+        }
+        return false;
+    }
+
+    /**
+     * Counts the views of a subtree
+     *
+     * @param view Root of the subtree
+     * @return Number of views, the root included
+     */
+    private static int countViews(View view) {
+        int count = 1;
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                count += countViews(group.getChildAt(i));
+            }
         }
+        return count;
+    }
+
+    /**
+     * Sets the max number of views kept in the process-wide pool
+     * of inflated toolbar and expanded layouts, 0 to disable it
+     * By default, the pool is disabled
+     *
+     * @param maxSize Max number of pooled views
+     */
+    public static void setViewPoolSize(int maxSize) {
+        ViewPool.setMaxSize(maxSize);
+    }
+
+    /**
+     * Evicts all the views kept in the process-wide pool
+     */
+    public static void clearViewPool() {
+        ViewPool.clear();
+    }
+
+    /**
+     * Sets the custom layout max size
+     *
+     * @param maxSize Max size height of expanded layout
+     */
+    public void setExpandMaxSize(float maxSize) {
+        mGeometry.setRequestedMaxSize((int) maxSize);
+    }
+
+    /**
+     * Gets the custom layout max size
+     *
+     * @return The max size height of expanded layout provides by xml
+     * or a default size if the max size is larger than the parent
+     */
+    public int getExpandMaxSize() {
+        return mController.getExpandMaxSize();
+    }
+
+    /**
+     * Sets the default duration of expanding animation
+     * If not set or less than/equal to 0ms, default is 300ms
+     *
+     * @param duration Milliseconds in Long
+     */
+    public void setExpandDuration(long duration) {
+        mController.setExpandDuration(duration);
+    }
+
+    /**
+     * Sets the default duration of collapsing animation
+     * If not set or less than/equal to 0ms, default is 300ms
+     *
+     * @param duration Milliseconds in Long
+     */
+    public void setCollapseDuration(long duration) {
+        mController.setCollapseDuration(duration);
+    }
+
+    /**
+     * Sets the animation mode of expanding and collapsing animations
+     * {@link #EXPAND_MODE_RESIZE} by default
+     *
+     * @param mode {@link #EXPAND_MODE_RESIZE} or {@link #EXPAND_MODE_REVEAL}
+     */
+    public void setExpandAnimationMode(int mode) {
+        mExpandAnimationMode = mode;
+    }
+
+    /**
+     * Gets the animation mode of expanding and collapsing animations
+     *
+     * @return {@link #EXPAND_MODE_RESIZE} or {@link #EXPAND_MODE_REVEAL}
+     */
+    public int getExpandAnimationMode() {
+        return this.mExpandAnimationMode;
+    }
+
+    /**
+     * Sets the layer policy of the expanded layout, the toolbar and
+     * the close icon during the transitions
+     * {@link #LAYER_POLICY_NONE} by default
+     *
+     * @param policy {@link #LAYER_POLICY_NONE} or {@link #LAYER_POLICY_TRANSITION}
+     */
+    public void setLayerPolicy(int policy) {
+        mLayerPolicy = policy;
+    }
+
+    /**
+     * Gets the layer policy during the transitions
+     *
+     * @return {@link #LAYER_POLICY_NONE} or {@link #LAYER_POLICY_TRANSITION}
+     */
+    public int getLayerPolicy() {
+        return this.mLayerPolicy;
+    }
+
+    /**
+     * Adds a listener notified with the progress of the widget on each
+     * frame it changes, during the animations, the drag and its settling,
+     * and when the expanded mode is restored
+     *
+     * @param listener Listener of the expand progress
+     */
+    public void addOnExpandProgressListener(OnExpandProgressListener listener) {
+        if (!mProgressListeners.contains(listener)) {
+            mProgressListeners.add(listener);
+        }
+    }
+
+    /**
+     * Removes an expand progress listener
+     *
+     * @param listener Listener of the expand progress
+     */
+    public void removeOnExpandProgressListener(OnExpandProgressListener listener) {
+        mProgressListeners.remove(listener);
+    }
+
+    /**
+     * Attaches a view to the transitions, its transform is applied with
+     * the progress of the widget in the same frames, and now with the
+     * current one. A view has one transform, the previous one is replaced
+     *
+     * @param view View of the expanded layout or of the toolbar
+     * @param transform Transform of the view
+     * @see ExpandTransform
+     */
+    public void addExpandTransform(View view, ExpandTransform transform) {
+        int index = mTransformViews.indexOf(view);
+        if (index != -1) {
+            mTransforms.set(index, transform);
+        } else {
+            mTransformViews.add(view);
+            mTransforms.add(transform);
+        }
+        transform.apply(view, mController.getProgress());
+    }
+
+    /**
+     * Detaches a view from the transitions, it keeps its current
+     * properties
+     *
+     * @param view Transformed view
+     */
+    public void removeExpandTransform(View view) {
+        int index = mTransformViews.indexOf(view);
+        if (index != -1) {
+            mTransformViews.remove(index);
+            mTransforms.remove(index);
+        }
+    }
+
+    /**
+     * Detaches the transforms of the views of a layout taken
+     * by another widget
+     *
+     * @param layout Layout taken
+     */
+    private void removeTransforms(View layout) {
+        for (int i = mTransformViews.size() - 1; i >= 0; i--) {
+            if (isDescendant(mTransformViews.get(i), layout)) {
+                mTransformViews.remove(i);
+                mTransforms.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Sets a listener notified with the frame timings of each
+     * expanding and collapsing transition, null to stop recording
+     *
+     * @param listener Listener of the transition metrics
+     */
+    public void setTransitionMetricsListener(TransitionMetricsListener listener) {
+        if (mMetricsRecorder != null && mMetricsRecorder.isRecording()) {
+            Choreographer.getInstance().removeFrameCallback(mMetricsFrameCallback);
+            mMetricsRecorder.end();
+        }
+        mMetricsListener = listener;
+        mMetricsRecorder = listener != null
+                ? new TransitionMetricsRecorder(TransitionMetricsRecorder.SYSTEM_CLOCK,
+                        getFrameIntervalNanos())
+                : null;
+    }
+
+    /**
+     * Gets the refresh period of the display
+     *
+     * @return Nanoseconds between two frames
+     */
+    private long getFrameIntervalNanos() {
+        float refreshRate = activity != null
+                ? activity.getWindowManager().getDefaultDisplay().getRefreshRate() : 0.f;
+        return (long) (1000000000L / (refreshRate > 0.f ? refreshRate : 60.f));
+    }
+
+    /**
+     * Sets scroll flags to collapsingtoolbar
+     *
+     * @param flags Scroll behavior flags
+     */
+    public void setScrollFlags(@LayoutParams.ScrollFlags int flags) {
+        AppBarLayout.LayoutParams params =
+                (AppBarLayout.LayoutParams)
+                mContainer.getLayoutParams();
+        // default flags if not set
+        if (flags == -1) {
+            flags = LayoutParams.SCROLL_FLAG_SCROLL
+                    | LayoutParams.SCROLL_FLAG_EXIT_UNTIL_COLLAPSED;
+        }
+        params.setScrollFlags(flags);
+        mContainer.setLayoutParams(params);
+    }
+
+    /**
+     * Sets content scrim to collapsingtoolbar
+     *
+     * @param drawable Drawable of content scrim
+     */
+    public void setContentScrim(Drawable drawable) {
+        mContainer.setContentScrim(drawable);
+    }
+
+    /**
+     * Sets a click listener to the nested locked view to hide
+     * the expanded layout
+     */
+    public void hideWhenTouchOutside(boolean hideWhenTouchOutside) {
+        mHideWhenTouchOutside = hideWhenTouchOutside;
+    }
+
+    /**
+     * Gets the current state of the nested locked view to hide
+     * the expanded layout
+     * @return Boolean of the state to hide when the user touches outside
+     */
+    public boolean isHiddenWhenTouchOutside() {
+        return this.mHideWhenTouchOutside;
+    }
+
+    /**
+     * Sets the mask view which overlaps the nested views while
+     * expanded, if false the outside touches are detected by
+     * the behavior of the widget
+     * By default, the mask view is used
+     *
+     * @param useMaskView Boolean to use the mask view
+     */
+    public void setUseMaskView(boolean useMaskView) {
+        mUseMaskView = useMaskView;
+    }
+
+    /**
+     * Gets the mask view usage
+     *
+     * @return Boolean of the mask view usage
+     */
+    public boolean isMaskViewUsed() {
+        return this.mUseMaskView;
+    }
+
+    /**
+     * Sets the scrim color drawn over the nested views while
+     * expanded, only in mask-free mode and since API 18
+     *
+     * @param color Color of the scrim, transparent to remove it
+     */
+    public void setScrimColor(int color) {
+        mScrim = Color.alpha(color) != 0 ? new ColorDrawable(color) : null;
+    }
+
+    /**
+     * Sets the drag mode, in which the collapsed toolbar can be
+     * pulled down to expand the widget
+     * By default, the drag mode is disabled
+     *
+     * @param dragToExpand Boolean to enable the drag mode
+     */
+    public void setDragToExpand(boolean dragToExpand) {
+        mDragToExpand = dragToExpand;
+    }
+
+    /**
+     * Gets the drag mode state
+     *
+     * @return Boolean of the drag mode state
+     */
+    public boolean isDragToExpandEnabled() {
+        return this.mDragToExpand;
+    }
+
+    /**
+     * Returns true if the behavior has to catch the touches
+     * outside the widget to hide the expanded layout
+     *
+     * @return Boolean of the touch outside state
+     */
+    boolean isOutsideTouchIntercepted() {
+        return !mUseMaskView && mController.isExpanded() && isHiddenWhenTouchOutside();
+    }
+
+    /**
+     * Gets the current state of expanded layout
+     * True if visible or requested to be shown, false otherwise
+     *
+     * @return Boolean of the current state
+     */
+    public boolean isExpanded() {
+        return mCommandPending ? mTargetExpanded : mController.isExpanded();
+    }
+
+    /**
+     * Sets the initial toolbar's height, and the params of
+     * the views sized by it, before they are measured
+     *
+     * @param toolbarHeight Initial height of the toolbar
+     */
+    private void setToolbarStartHeight(int toolbarHeight) {
+        mGeometry.setStartHeights(mGeometry.getAppBarStartHeight(), toolbarHeight);
+        setCloseIconParams(true);
+        setExpandedLayoutParams(true);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        // a toolbar without a declared height gives its measured one,
+        // the views sized by it are measured again in the same pass
+        if (!mGeometry.hasToolbarStartHeight() && mToolbar.getMeasuredHeight() > 0) {
+            setToolbarStartHeight(mToolbar.getMeasuredHeight());
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        // a collapsed widget at rest gives its initial height, the
+        // toolbar keeps its declared one
+        if (h > 0 && h != mGeometry.getAppBarStartHeight()
+                && mController.getState() == ExpandController.STATE_COLLAPSED
+                && !mController.isDragging()) {
+            mGeometry.setStartHeights(h, mGeometry.getToolbarStartHeight());
+        }
+        // measured at last, the prewarm is requested again
+        if (mPrewarmWaiting && mGeometry.isMeasured()) {
+            prewarm();
+        }
+    }
+
+    /**
+     * Restores the expanded mode of a saved state once the initial
+     * heights and the parent's height are known, after the layout
+     * giving them and before the first draw: the first frame is
+     * drawn expanded
+     *
+     * @return True if restored
+     */
+    private boolean restorePendingState() {
+        if (!mRestorePending || !mGeometry.isMeasured() || !mGeometry.hasParentHeight())
+            return false;
+
+        mRestorePending = false;
+        restoreExpandedLayout();
+        return true;
+    }
+
+    /**
+     * Waits for the draw following the layout which gives the geometry,
+     * to restore the saved state out of the layout pass
+     */
+    private void awaitPendingState() {
+        getViewTreeObserver().removeOnPreDrawListener(mRestoreListener);
+        getViewTreeObserver().addOnPreDrawListener(mRestoreListener);
+        // a widget already drawn needs a new frame
+        invalidate();
+    }
+
+    /**
+     * Updates the geometry for a new height of the parent, the expanded
+     * or expanding widget is rescaled without inflating its views again
+     *
+     * @param parentHeight New height of the parent container
+     */
+    private void onParentResized(int parentHeight) {
+        if (!mController.onParentResized(parentHeight))
+            return;
+
+        // a show waiting for the parent's height
+        if (mCommandPending && mTargetExpanded && ViewCompat.isAttachedToWindow(this)) {
+            Choreographer.getInstance().removeFrameCallback(mCommandCallback);
+            Choreographer.getInstance().postFrameCallback(mCommandCallback);
+        }
+        if (!mController.isDragging())
+            return;
+
+        // the dragged widget is laid out again at the new max size
+        int maxHeight = getExpandMaxSize();
+        mDragRange = Math.max(1, maxHeight - mGeometry.getAppBarStartHeight());
+        setFinalHeights(maxHeight, maxHeight);
+        mTimeline.jump();
+        setDragProgress(mController.getProgress());
+    }
+
+    /**
+     * Sets layout params on expanded view
+     *
+     * @param beforeMeasure True if set before the view is measured,
+     *                      otherwise a new layout is requested
+     */
+    private void setExpandedLayoutParams(boolean beforeMeasure) {
+        // not inflated yet, set when attached
+        if (mExpandLayout == null)
+            return;
+
+        // preparing view parameters, updated in place: before the
+        // measure, the pass to come reads them
+        CollapsingToolbarLayout.LayoutParams params =
+                (CollapsingToolbarLayout.LayoutParams)
+                mExpandLayout.getLayoutParams();
+        params.topMargin = mGeometry.getToolbarStartHeight();
+        mExpandLayout.setFocusableInTouchMode(true);
+        if (!beforeMeasure) {
+            mExpandLayout.requestLayout();
+        }
+    }
+
+    /**
+     * Sets a mask view in the parent container
+     */
+    private void setMaskView() {
+        // mask-free mode
+        if (!mUseMaskView)
+            return;
+
+        ViewGroup parent = (ViewGroup) getParent();
+        mMaskView = activity
+                .getLayoutInflater()
+                .inflate(R.layout.maskview, parent, false);
+        mMaskView.setId(R.id.layout_default_mask);
+        parent.addView(mMaskView);
+    }
+
+    /**
+     * Sets layout params on close icon
+     *
+     * @param beforeMeasure True if set before the view is measured,
+     *                      otherwise a new layout is requested
+     */
+    private void setCloseIconParams(boolean beforeMeasure) {
+        // no close icon, the navigation icon is used
+        if (mCloseIcon == null)
+            return;
+
+        int size = mGeometry.getToolbarStartHeight();
+        ViewGroup.LayoutParams current = mCloseIcon.getLayoutParams();
+        if (current instanceof CollapsingToolbarLayout.LayoutParams) {
+            // updated in place, as the expanded layout's ones
+            current.width = size;
+            current.height = size;
+            ((CollapsingToolbarLayout.LayoutParams) current).gravity = Gravity.START | Gravity.TOP;
+            if (!beforeMeasure) {
+                mCloseIcon.requestLayout();
+            }
+            return;
+        }
+        CollapsingToolbarLayout.LayoutParams params =
+                new CollapsingToolbarLayout.LayoutParams(size, size);
+        params.gravity = Gravity.START | Gravity.TOP;
+        mCloseIcon.setLayoutParams(params);
+    }
+
+    /**
+     * Gets activity from context wrapper
+     *
+     * @param c Context wrapper
+     * @return Activity if exists, otherwise null
+     */
+    private Activity getActivity(Context c) {
+        if (c == null) {
+            return null;
+        } else if (c instanceof Activity) {
+            return (Activity) c;
+        } else if (c instanceof ContextWrapper) {
+            return getActivity(((ContextWrapper) c).getBaseContext());
+        }
+        return (Activity) getContext();
+    }
+
+    /**
+     * Initializes the inner widgets: toolbar, expanded layout,
+     * close icon, nested locked view
+     */
+    private void initialize() {
+        // one timeline drives the appbar and its toolbar
+        mTimeline = new ExpandTimeline(this, mToolbar);
+
+        // the toolbar declares its height, so the views sized by it
+        // get their params before the first measure; the appbar gives
+        // its own in the first layout, the mask view is set when attached
+        ViewGroup.LayoutParams params = mToolbar.getLayoutParams();
+        if (params != null && params.height > 0) {
+            setToolbarStartHeight(params.height);
+        }
+    }
+
+    /**
+     * Inflates and attaches the widgets
+     *
+     * @return The view inflated
+     */
+    private ViewGroup inflating() {
+        View contentView = activity
+                .getLayoutInflater()
+                .inflate(R.layout.appbarrrview, this, true);
+        return (ViewGroup) contentView;
+    }
+
+    /**
+     * Shows the half-transparent view outside the appbarrr
+     */
+    private void hideOutsideViews() {
+        // hide other nested views
+        if (mMaskView != null) {
+            mMaskView.setVisibility(View.VISIBLE);
+            if (isHiddenWhenTouchOutside()) {
+                mMaskView.setOnClickListener(mHideListener);
+            }
+        } else if (hasScrim()) {
+            // dimmed by the scrim in mask-free mode
+            addScrim();
+        }
+    }
+
+    /**
+     * Hides the half-transparent view outside the appbarrr
+     */
+    private void showOutsideViews() {
+        // show other nested views
+        if (mMaskView != null) {
+            mMaskView.setVisibility(View.GONE);
+            if (isHiddenWhenTouchOutside()) {
+                mMaskView.setOnClickListener(null);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the scrim can be drawn on the parent's overlay
+     *
+     * @return Boolean of the scrim state
+     */
+    private boolean hasScrim() {
+        return !mUseMaskView && mScrim != null
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    /**
+     * Sets the scrim bounds below the visible widget and its
+     * alpha according to the expanded height
+     */
+    private void updateScrim() {
+        if (!hasScrim())
+            return;
+
+        View parent = (View) getParent();
+        int startHeight = mGeometry.getAppBarStartHeight();
+        int visibleHeight = getVisibleHeight();
+        int range = getExpandMaxSize() - startHeight;
+        float progress = range > 0 ? (float) (visibleHeight - startHeight) / range : 1.f;
+        mScrim.setBounds(0, getTop() + visibleHeight, parent.getWidth(), parent.getHeight());
+        mScrim.setAlpha(Math.round(255 * Math.max(0.f, Math.min(1.f, progress))));
+    }
+
+    /**
+     * Adds the scrim on the parent's overlay, a single
+     * drawable drawn over the nested views
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private void addScrim() {
+        ((ViewGroup) getParent()).getOverlay().add(mScrim);
+        updateScrim();
+    }
+
+    /**
+     * Removes the scrim once collapsed
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private void removeScrim() {
+        if (hasScrim() && !mController.isExpanded()) {
+            ((ViewGroup) getParent()).getOverlay().remove(mScrim);
+        }
+    }
+
+    /**
+     * Gets the height of the widget drawn in the current frame
+     *
+     * @return Height in pixels
+     */
+    private int getVisibleHeight() {
+        if (mRevealHeight != -1) {
+            return mRevealHeight;
+        }
+        int height = getLayoutParams().height;
+        return height > 0 ? height : getHeight();
+    }
+
+    /**
+     * Called when an animation starts
+     *
+     * @param expanding True if the widgets are expanded
+     * @param duration Milliseconds of the animation
+     * @param resizing True if the heights change on each frame
+     */
+    private void onTransitionStart(boolean expanding, long duration, boolean resizing) {
+        // interrupted transition
+        onTransitionEnd();
+        if (mLayerPolicy == LAYER_POLICY_TRANSITION) {
+            promoteLayers(resizing);
+        }
+        if (mMetricsRecorder != null) {
+            mMetricsRecorder.begin(expanding, duration);
+            Choreographer.getInstance().postFrameCallback(mMetricsFrameCallback);
+        }
+    }
+
+    /**
+     * Called on each frame of an animation, once the widgets
+     * are moved
+     */
+    private void onTransitionFrame() {
+        updateScrim();
+        dispatchExpandProgress();
+    }
+
+    /**
+     * Gives the progress of the controller to the transforms and
+     * the listeners, if it changed since the last frame
+     */
+    private void dispatchExpandProgress() {
+        float progress = mController.getProgress();
+        if (progress == mDispatchedProgress)
+            return;
+
+        boolean expanding = progress > mDispatchedProgress;
+        mDispatchedProgress = progress;
+        // indexed loops, no iterator on each frame
+        for (int i = 0; i < mTransforms.size(); i++) {
+            mTransforms.get(i).apply(mTransformViews.get(i), progress);
+        }
+        for (int i = 0; i < mProgressListeners.size(); i++) {
+            mProgressListeners.get(i).onExpandProgress(this, progress, expanding);
+        }
+    }
+
+    /**
+     * Runs a frame of the running transition as the animator and the
+     * choreographer do, without drawing it. Used by the instrumented
+     * tests to count the allocations of a frame
+     *
+     * @param frameTimeNanos Vsync time of the frame
+     * @param fraction Animated fraction, from 0 to 1
+     */
+    void doTransitionFrame(long frameTimeNanos, float fraction) {
+        mTimeline.update(fraction);
+        if (mMetricsRecorder != null && mMetricsRecorder.isRecording()) {
+            // posted again by the callback, from the recycled record
+            Choreographer.getInstance().removeFrameCallback(mMetricsFrameCallback);
+            mMetricsFrameCallback.doFrame(frameTimeNanos);
+        }
+    }
+
+    /**
+     * Called when an animation ends or is interrupted
+     */
+    private void onTransitionEnd() {
+        restoreLayers();
+        // final progress of an interrupted transition
+        dispatchExpandProgress();
+        if (mMetricsRecorder != null && mMetricsRecorder.isRecording()) {
+            Choreographer.getInstance().removeFrameCallback(mMetricsFrameCallback);
+            mMetricsListener.onTransitionMetrics(this, mMetricsRecorder.end());
+        }
+    }
+
+    /**
+     * Draws the views of the transition in hardware layers, except
+     * the views resized on each frame whose layers would be redrawn
+     * anyway and the views too large to be cached
+     *
+     * @param resizing True if the heights change on each frame
+     */
+    private void promoteLayers(boolean resizing) {
+        int maxSize = ViewConfiguration.get(getContext()).getScaledMaximumDrawingCacheSize();
+        int width = getWidth();
+        // the expanded layout may not be laid out yet
+        if (mExpandLayout != null && !(resizing && mExpandLayout.getLayoutParams().height
+                == ViewGroup.LayoutParams.MATCH_PARENT)) {
+            promoteLayer(0, mExpandLayout, (long) width * getExpandMaxSize(), maxSize);
+        }
+        // the toolbar is resized with the widget
+        if (!resizing) {
+            promoteLayer(1, mToolbar, (long) width * getExpandMaxSize(), maxSize);
+        }
+        if (mCloseIcon != null) {
+            promoteLayer(2, mCloseIcon,
+                    (long) mCloseIcon.getWidth() * mCloseIcon.getHeight(), maxSize);
+        }
+    }
+
+    /**
+     * Draws a view in a hardware layer if it is small enough
+     *
+     * @param index Slot of the view
+     * @param view View to promote
+     * @param area Area of the view in pixels
+     * @param maxSize Max size of a layer in bytes
+     */
+    private void promoteLayer(int index, View view, long area, int maxSize) {
+        // 4 bytes per pixel
+        if (view.getLayerType() == View.LAYER_TYPE_HARDWARE || area * 4 > maxSize)
+            return;
+
+        mLayerViews[index] = view;
+        mLayerTypes[index] = view.getLayerType();
+        view.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+    }
+
+    /**
+     * Restores the previous layer types of the promoted views
+     */
+    private void restoreLayers() {
+        for (int i = 0; i < mLayerViews.length; i++) {
+            if (mLayerViews[i] != null) {
+                mLayerViews[i].setLayerType(mLayerTypes[i], null);
+                mLayerViews[i] = null;
+            }
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        if (mMetricsRecorder != null) {
+            mMetricsRecorder.onLayout();
+        }
+    }
+
+    /**
+     * Animates the appbar and toolbar height to expanded mode
+     *
+     * @param targetHeight Final height for the expanded views
+     * @param duration Milliseconds of the animation
+     */
+    private void setExpandedAndLocked(int targetHeight, long duration) {
+        onTransitionStart(true, duration, true);
+
+        // the timeline expands the widgets together
+        mTransitionCallback.prepare(true, -1, -1, 0);
+        setFinalHeights(targetHeight, targetHeight);
+        mTimeline.animate(duration, mTransitionCallback);
+    }
+
+    /**
+     * Lays out the appbar and toolbar in expanded mode once and
+     * reveals them with an animation of the drawing bounds
+     *
+     * @param targetHeight Final height for the expanded views
+     * @param duration Milliseconds of the animation
+     */
+    private void setExpandedAndRevealed(int targetHeight, long duration) {
+        int startHeight = mRevealHeight != -1 ? mRevealHeight : getHeight();
+        onTransitionStart(true, duration, false);
+
+        // single layout commit to the final geometry
+        setFinalHeights(targetHeight, targetHeight);
+        mTimeline.jump();
+        setRevealHeight(startHeight, targetHeight);
+
+        // the timeline reveals the widgets without layout
+        mTransitionCallback.prepare(true, startHeight, targetHeight, targetHeight);
+        mTimeline.run(duration, mTransitionCallback);
+    }
+
+    /**
+     * Hides the appbar and toolbar with an animation of the drawing
+     * bounds and lays out them in collapsed mode once at the end
+     *
+     * @param appBarHeight Final height for the collapsed appbar
+     * @param toolbarHeight Final height for the collapsed toolbar
+     * @param duration Milliseconds of the animation
+     */
+    private void setCollapsedAndConcealed(int appBarHeight, int toolbarHeight, long duration) {
+        int startHeight = mRevealHeight != -1 ? mRevealHeight : getHeight();
+        onTransitionStart(false, duration, false);
+
+        // the timeline conceals the widgets without layout, the final
+        // heights are committed at the end
+        mTransitionCallback.prepare(false, startHeight, appBarHeight, getHeight());
+        setFinalHeights(appBarHeight, toolbarHeight);
+        mTimeline.run(duration, mTransitionCallback);
+    }
+
+    /**
+     * Sets the visible height of the widget in reveal mode and
+     * translates the expanded layout along its bottom edge
+     *
+     * @param revealHeight Visible height, -1 to stop revealing
+     * @param layoutHeight Height of the laid out widget
+     */
+    private void setRevealHeight(int revealHeight, int layoutHeight) {
+        mRevealHeight = revealHeight;
+        if (mExpandLayout != null) {
+            mExpandLayout.setTranslationY(revealHeight == -1 ? 0 : revealHeight - layoutHeight);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            updateRevealOutline();
+        }
+        invalidate();
+    }
+
+    /**
+     * Clips the outline to the visible height while revealing, so the
+     * shadow follows the revealed edge, and restores the previous
+     * outline provider at the end
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void updateRevealOutline() {
+        if (mRevealHeight != -1) {
+            if (!mRevealOutlined) {
+                if (mRevealOutlineProvider == null) {
+                    mRevealOutlineProvider = new RevealOutlineProvider();
+                }
+                mSavedOutlineProvider = getOutlineProvider();
+                mRevealOutlined = true;
+                setOutlineProvider((ViewOutlineProvider) mRevealOutlineProvider);
+            } else {
+                invalidateOutline();
+            }
+        } else if (mRevealOutlined) {
+            mRevealOutlined = false;
+            setOutlineProvider((ViewOutlineProvider) mSavedOutlineProvider);
+            mSavedOutlineProvider = null;
+        }
+    }
+
+    /**
+     * Outline of the visible part of a revealing widget, with
+     * the alpha of its background
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static final class RevealOutlineProvider extends ViewOutlineProvider {
+        @Override
+        public void getOutline(View view, Outline outline) {
+            AppBarrr appBarrr = (AppBarrr) view;
+            Drawable background = view.getBackground();
+            if (background != null) {
+                background.getOutline(outline);
+            } else {
+                outline.setAlpha(0.f);
+            }
+            outline.setRect(0, 0, view.getWidth(), appBarrr.getVisibleHeight());
+        }
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent ev) {
+        // the hidden part of a revealing widget lets the touches
+        // go to the views drawn below it
+        if (mRevealHeight != -1 && ev.getActionMasked() == MotionEvent.ACTION_DOWN
+                && ev.getY() >= mRevealHeight) {
+            return false;
+        }
+        return super.dispatchTouchEvent(ev);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        // clips the background in reveal mode
+        if (mRevealHeight != -1) {
+            int save = canvas.save();
+            canvas.clipRect(0, 0, getWidth(), mRevealHeight);
+            super.draw(canvas);
+            canvas.restoreToCount(save);
+        } else {
+            super.draw(canvas);
+        }
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        // clips the children in reveal mode, needed when
+        // the widget has no background to draw
+        if (mRevealHeight != -1) {
+            int save = canvas.save();
+            canvas.clipRect(0, 0, getWidth(), mRevealHeight);
+            super.dispatchDraw(canvas);
+            canvas.restoreToCount(save);
+        } else {
+            super.dispatchDraw(canvas);
+        }
+    }
+
+    /**
+     * Animates the widgets height to collapsed mode
+     *
+     * @param appBarHeight Final height for the collapsed appbar
+     * @param toolbarHeight Final height for the collapsed toolbar
+     * @param duration Milliseconds of the animation
+     */
+    private void setCollapsedAndUnexpanded(int appBarHeight, int toolbarHeight, long duration) {
+        onTransitionStart(false, duration, true);
+
+        // the timeline collapses the widgets together
+        mTransitionCallback.prepare(false, -1, -1, 0);
+        setFinalHeights(appBarHeight, toolbarHeight);
+        mTimeline.animate(duration, mTransitionCallback);
     }
 
     /**
-     * Gets activity from context wrapper
+     * Stages the final heights of the timeline targets
      *
-     * @param c Context wrapper
-     * @return Activity if exists, otherwise null
+     * @param appBarHeight Final height for the appbar
+     * @param toolbarHeight Final height for the toolbar
      */
-    private Activity getActivity(Context c) {
-        if (c == null) {
-            return null;
-        } else if (c instanceof Activity) {
-            return (Activity) c;
-        } else if (c instanceof ContextWrapper) {
-            return getActivity(((ContextWrapper) c).getBaseContext());
-        }
-        return (Activity) getContext();
+    private void setFinalHeights(int appBarHeight, int toolbarHeight) {
+        mTimeline.setFinalHeight(0, appBarHeight);
+        mTimeline.setFinalHeight(1, toolbarHeight);
     }
 
     /**
-     * Initializes the inner widgets: toolbar, expanded layout,
-     * close icon, nested locked view, default touch event
+     * Frame callback shared by all the transitions, its state is
+     * set before each transition to avoid any allocation
      */
-    private void initialize() {
-        // we need to get the height of the widgets so we need
-        // a thread to wait until the UI is displayed
-        post(new Runnable() {
-            @Override
-            public void run() {
-                setInitialHeights();
-                setCloseIconParams();
-                setExpandedLayoutParams();
-                setMaskView();
-                setDefaultTouchEvent();
+    private final class TransitionCallback implements ExpandTimeline.Callback {
+        private boolean mExpanding;
+        private int mRevealFrom = -1;
+        private int mRevealTo = -1;
+        private int mLayoutHeight;
+
+        /**
+         * Sets the state of the next transition
+         *
+         * @param expanding True if the transition expands the widget
+         * @param revealFrom Starting visible height, -1 if not revealing
+         * @param revealTo Final visible height, -1 if not revealing
+         * @param layoutHeight Height of the laid out widget while revealing
+         */
+        void prepare(boolean expanding, int revealFrom, int revealTo, int layoutHeight) {
+            mExpanding = expanding;
+            mRevealFrom = revealFrom;
+            mRevealTo = revealTo;
+            mLayoutHeight = layoutHeight;
+        }
+
+        @Override
+        public void onTimelineUpdate(float fraction) {
+            mController.onTransitionUpdate(fraction);
+            if (mRevealFrom != -1) {
+                setRevealHeight(mRevealFrom
+                        + Math.round((mRevealTo - mRevealFrom) * fraction), mLayoutHeight);
             }
-        });
+            onTransitionFrame();
+        }
+
+        @Override
+        public void onTimelineEnd() {
+            mController.onTransitionEnd();
+            if (mRevealFrom != -1) {
+                setRevealHeight(-1, mLayoutHeight);
+                if (!mExpanding) {
+                    // single layout commit to the final geometry
+                    hideExpandedViews();
+                    mTimeline.jump();
+                }
+            }
+            if (!mExpanding) {
+                removeScrim();
+            }
+            onTransitionEnd();
+        }
     }
 
     /**
-     * Inflates and attaches the widgets
+     * Returns true if a new gesture can drag the widget
      *
-     * @return The view inflated
+     * @return Boolean of the draggable state
      */
-    private ViewGroup inflating() {
-        View contentView = activity
-                .getLayoutInflater()
-                .inflate(R.layout.appbarrrview, this, true);
-        return (ViewGroup) contentView;
+    private boolean canStartDrag() {
+        return mDragToExpand && isEnabled() && mGeometry.isMeasured()
+                && mController.getState() == ExpandController.STATE_COLLAPSED
+                && (mExpandLayout != null || hasExpandLayoutSource());
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent ev) {
+        if (!canStartDrag() && !mController.isDragging())
+            return super.onInterceptTouchEvent(ev);
+
+        // the children keep the touches until a drag starts
+        return handleDrag(ev) || super.onInterceptTouchEvent(ev);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent ev) {
+        if (!canStartDrag() && !mController.isDragging())
+            return super.onTouchEvent(ev);
+
+        handleDrag(ev);
+        return true;
     }
 
     /**
-     * Shows the half-transparent view outside the appbarrr
+     * Follows a gesture which can drag the widget
+     *
+     * @param ev Touch event
+     * @return True while dragging
      */
-    private void hideOutsideViews() {
-        // hide other nested views
-        if (mMaskView != null) {
-            mMaskView.setVisibility(View.VISIBLE);
-            if (isHiddenWhenTouchOutside()) {
-                mMaskView.setOnClickListener(new OnClickListener() {
-                    @Override
-                    public void onClick(View v) {
-                        hideExpandedLayout();
+    private boolean handleDrag(MotionEvent ev) {
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        }
+
+        switch (ev.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mVelocityTracker.clear();
+                mVelocityTracker.addMovement(ev);
+                mDragStartX = ev.getX();
+                mDragStartY = ev.getY();
+                break;
+            case MotionEvent.ACTION_MOVE:
+                mVelocityTracker.addMovement(ev);
+                if (!mController.isDragging()) {
+                    // a vertical move pulling the toolbar down
+                    float dy = ev.getY() - mDragStartY;
+                    if (dy > mTouchSlop && dy > Math.abs(ev.getX() - mDragStartX)) {
+                        startDrag(ev.getY());
                     }
-                });
-            }
+                } else {
+                    mController.setProgress((ev.getY() - mDragStartY) / mDragRange);
+                    setDragProgress(mController.getProgress());
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                if (mController.isDragging()) {
+                    mVelocityTracker.addMovement(ev);
+                    mVelocityTracker.computeCurrentVelocity(1000);
+                    releaseDrag(mVelocityTracker.getYVelocity() / mDragRange);
+                }
+                break;
         }
+        return mController.isDragging();
     }
 
     /**
-     * Hides the half-transparent view outside the appbarrr
+     * Starts dragging the widget, the expanded geometry is laid out
+     * once and the drag only moves the drawing bounds
+     *
+     * @param y Position of the gesture
      */
-    private void showOutsideViews() {
-        // show other nested views
-        if (mMaskView != null) {
-            mMaskView.setVisibility(View.GONE);
-            if (isHiddenWhenTouchOutside()) {
-                mMaskView.setOnClickListener(null);
-            }
+    private void startDrag(float y) {
+        int startHeight = mGeometry.getAppBarStartHeight();
+        int maxHeight = getExpandMaxSize();
+        if (maxHeight <= startHeight || !mController.startDrag())
+            return;
+
+        if (getParent() != null) {
+            getParent().requestDisallowInterceptTouchEvent(true);
         }
+        mDragStartY = y;
+        mDragRange = maxHeight - startHeight;
+        onTransitionStart(true, 0, false);
+
+        // single layout commit to the final geometry
+        setFinalHeights(maxHeight, maxHeight);
+        mTimeline.jump();
+        setRevealHeight(startHeight, maxHeight);
     }
 
     /**
-     * Animates the appbar and toolbar height to expanded mode
+     * Sets the visible height of the widget for a progress
+     * of the drag or of its settling
      *
-     * @param target View to expand with an animation
-     * @param targetHeight Final height for the expanded view
+     * @param progress Progress, from 0 when collapsed to 1 when expanded
      */
-    private void setExpandedAndLocked(final View target, final int targetHeight) {
-        // set a animation from current height to target
-        final ValueAnimator slideAnimator = ValueAnimator
-                .ofInt(target.getHeight(), targetHeight)
-                .setDuration(mExpandDuration);
-
-        // SCROLLABLE-HACK: force scrollable content for nested child
-        final ViewGroup parent = (ViewGroup) getParent();
-        final boolean forceScrollable = parent.getChildAt(1) != null;
-
-        // the animation expands the widgets
-        slideAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                target.getLayoutParams().height = (Integer) animation.getAnimatedValue();
-                target.requestLayout();
-
-                // SCROLLABLE-HACK: scroll up to 1px the nested child
-                // to enable scrollable expanded content
-                if (forceScrollable) {
-                    parent.getChildAt(1).setScrollY(1);
-                }
-            }
-        });
-
-        // start animation
-        slideAnimator.start();
+    private void setDragProgress(float progress) {
+        int startHeight = mGeometry.getAppBarStartHeight();
+        setRevealHeight(startHeight + Math.round(mDragRange * progress), startHeight + mDragRange);
+        onTransitionFrame();
     }
 
     /**
-     * Animates the widgets height to collapsed mode
+     * Releases the drag and settles the widget with a spring
+     * starting at the velocity of the finger
      *
-     * @param target View to collapse with an animation
-     * @param targetHeight Final height for the collapsed view
+     * @param velocity Velocity of the finger, in progress per second
      */
-    private void setCollapsedAndUnexpanded(final View target, final int targetHeight) {
-        // set a animation from current height to target
-        final ValueAnimator slideAnimator = ValueAnimator
-                .ofInt(target.getHeight(), targetHeight)
-                .setDuration(mCollapseDuration);
+    private void releaseDrag(float velocity) {
+        float progress = mController.getProgress();
+        boolean expand = ExpandSpring.shouldExpand(progress, velocity);
+        mController.endDrag(expand);
+
+        mSpring.start(progress, velocity, expand ? 1.f : 0.f);
+        mSettling = true;
+        mLastSettleFrameNanos = 0;
+        Choreographer.getInstance().postFrameCallback(mSettleCallback);
+    }
 
-        // the animation collapses the widgets
-        slideAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                target.getLayoutParams().height = (Integer) animation.getAnimatedValue();
-                target.requestLayout();
-            }
-        });
+    /**
+     * Ends the settling once the spring is at rest, the collapsed
+     * geometry is laid out once at the end
+     */
+    private void endSettling() {
+        mSettling = false;
+        mController.onTransitionEnd();
+        setRevealHeight(-1, mGeometry.getAppBarStartHeight() + mDragRange);
+        if (!mController.isExpanded()) {
+            hideExpandedViews();
+            setFinalHeights(mGeometry.getAppBarStartHeight(), mGeometry.getToolbarStartHeight());
+            mTimeline.jump();
+            removeScrim();
+        }
+        onTransitionEnd();
+    }
 
-        // start animation
-        slideAnimator.start();
+    /**
+     * Stops the spring, an animation or a direct geometry
+     * takes over the settling
+     */
+    private void stopSettling() {
+        if (mSettling) {
+            mSettling = false;
+            Choreographer.getInstance().removeFrameCallback(mSettleCallback);
+        }
     }
 
     /**
      * Prepares expanded state elements
      */
     private void prepareShowing() {
-        // save the current visible state
-        setExpandState(true);
+        // inflate the expanded layout if deferred
+        ensureExpandLayout();
+        // the waiting stubs are inflated before being shown
+        if (mStagedInflater != null && mStagedInflater.isPending()) {
+            mStagedInflater.finish();
+        }
+
+        // lock the bar, the behavior stops the nested scroll in progress
+        lockBehavior();
 
         // hide outside views
         hideOutsideViews();
@@ -755,16 +2825,37 @@ public class AppBarrr extends AppBarLayout {
     }
 
     /**
-     * Prepares collapsed state elements
+     * Notifies the behavior that the bar is locked
      */
-    private void prepareHiding() {
-        // save the current visible state
-        setExpandState(false);
+    private void lockBehavior() {
+        if (getParent() instanceof CoordinatorLayout
+                && getLayoutParams() instanceof CoordinatorLayout.LayoutParams) {
+            CoordinatorLayout.Behavior<?> behavior =
+                    ((CoordinatorLayout.LayoutParams) getLayoutParams()).getBehavior();
+            if (behavior instanceof AppBarrrBehavior) {
+                ((AppBarrrBehavior) behavior).onLocked((CoordinatorLayout) getParent());
+            }
+        }
+    }
 
+    /**
+     * Prepares collapsed state elements, the expanded ones are hidden
+     * at the end of a concealing transition: its single layout commit
+     */
+    private void prepareHiding() {
         // show outside views
         showOutsideViews();
 
-        // hide toolbar's title from actionbar
+        if (!isRevealing()) {
+            hideExpandedViews();
+        }
+    }
+
+    /**
+     * Hides expanded state elements and shows the title
+     */
+    private void hideExpandedViews() {
+        // show toolbar's title from actionbar
         if (activity instanceof AppCompatActivity) {
             ActionBar ab = ((AppCompatActivity) activity).getSupportActionBar();
             if (ab != null) {
@@ -779,7 +2870,9 @@ public class AppBarrr extends AppBarLayout {
         }
 
         // hide the expanded layout
-        mExpandLayout.setVisibility(View.GONE);
+        if (mExpandLayout != null) {
+            mExpandLayout.setVisibility(View.GONE);
+        }
         // show the title
         mContainer.setTitleEnabled(true);
         // hide close icon
@@ -788,69 +2881,387 @@ public class AppBarrr extends AppBarLayout {
         }
     }
 
+    /**
+     * Returns true if the transitions reveal the widget: in reveal
+     * mode, or from the visible height of a drag
+     *
+     * @return Boolean of the revealing state
+     */
+    private boolean isRevealing() {
+        return mExpandAnimationMode == EXPAND_MODE_REVEAL || mRevealHeight != -1;
+    }
+
     /**
      * Forces to expanded mode and show the expanded layout
      */
     public void showExpandedLayout() {
-        if (isExpanded())
-            return;
+        requestMode(true);
+    }
 
-        post(new Runnable() {
-            @Override
-            public void run() {
-                // prepare elements
-                prepareShowing();
+    /**
+     * Restores expanded state
+     */
+    private void restoreExpandedLayout() {
+        // prepare elements and set the widgets in expanded mode
+        mController.restore();
+    }
+
+    /**
+     * Forces to collaspe the widget and hide the expanded layout
+     */
+    public void hideExpandedLayout() {
+        requestMode(false);
+    }
 
-                // get max size
-                int maxHeight = getExpandMaxSize();
+    /**
+     * Records the mode requested by a command, the commands of a frame
+     * are resolved once on the next frame to the last requested mode.
+     * A command back to the current mode cancels the pending one
+     *
+     * @param expanded True to expand, false to collapse
+     */
+    private void requestMode(boolean expanded) {
+        if (expanded == mController.isExpanded()) {
+            // nothing left to do
+            cancelCommand();
+            return;
+        }
 
-                // expand the widgets
-                setExpandedAndLocked(AppBarrr.this, maxHeight);
-                setExpandedAndLocked(mToolbar, maxHeight);
+        mTargetExpanded = expanded;
+        if (!mCommandPending) {
+            mCommandPending = true;
+            // resolved when attached otherwise
+            if (ViewCompat.isAttachedToWindow(this)) {
+                Choreographer.getInstance().postFrameCallback(mCommandCallback);
             }
-        });
+        }
     }
 
     /**
-     * Restores expanded state
+     * Cancels the pending command, if any
      */
-    private void restoreExpandedLayout() {
-        // temporary expanding duration
-        long tempDuration = mExpandDuration;
-        mExpandDuration = 1;
+    private void cancelCommand() {
+        if (mCommandPending) {
+            mCommandPending = false;
+            Choreographer.getInstance().removeFrameCallback(mCommandCallback);
+        }
+    }
+
+    /**
+     * Prepares and animates the widgets to the mode requested by
+     * the last command
+     */
+    private void resolveCommand() {
+        // no max size before the parent is laid out, the
+        // command waits for its height
+        if (mTargetExpanded && getExpandMaxSize() <= 0)
+            return;
 
-        // prepare elements
-        prepareShowing();
+        mCommandPending = false;
+        if (mTargetExpanded) {
+            mController.show();
+        } else {
+            mController.hide();
+        }
+    }
 
-        // get max size
-        int maxHeight = getExpandMaxSize();
+    /**
+     * Views driven by the controller
+     */
+    private class ControllerHost implements ExpandController.Host {
+        @Override
+        public int getParentHeight() {
+            return ((View) getParent()).getHeight();
+        }
+
+        @Override
+        public void onPrepareShowing() {
+            prepareShowing();
+        }
+
+        @Override
+        public void onPrepareHiding() {
+            prepareHiding();
+        }
+
+        @Override
+        public void onExpand(int maxHeight, long duration) {
+            stopSettling();
+            // a dragged widget keeps revealing
+            if (isRevealing()) {
+                setExpandedAndRevealed(maxHeight, duration);
+            } else {
+                setExpandedAndLocked(maxHeight, duration);
+            }
+        }
 
-        // expand the widgets
-        setExpandedAndLocked(this, maxHeight);
-        setExpandedAndLocked(mToolbar, maxHeight);
+        @Override
+        public void onExpanded(int maxHeight) {
+            stopSettling();
+            setRevealHeight(-1, maxHeight);
+            // final geometry in a single layout pass, no animator
+            setFinalHeights(maxHeight, maxHeight);
+            mTimeline.jump();
+            updateScrim();
+            dispatchExpandProgress();
+        }
 
-        // reset initial duration
-        mExpandDuration = tempDuration;
+        @Override
+        public void onCollapse(int appBarHeight, int toolbarHeight, long duration) {
+            stopSettling();
+            // animate the height from current to the initial height
+            if (isRevealing()) {
+                setCollapsedAndConcealed(appBarHeight, toolbarHeight, duration);
+            } else {
+                setCollapsedAndUnexpanded(appBarHeight, toolbarHeight, duration);
+            }
+        }
     }
 
     /**
-     * Forces to collaspe the widget and hide the expanded layout
+     * <h2>Builder</h2>
+     * <p>Creates an AppBarrr in code, from views already created or from factories,
+     * with a typed configuration: nothing is inflated and no attribute is parsed</p>
+     *
+     * <p>The toolbar and the expanded layout are required, the other values have
+     * the same defaults as the attributes.</p>
      */
-    public void hideExpandedLayout() {
-        if (!isExpanded())
-            return;
+    public static final class Builder {
+        private final Context mContext;
+        private Toolbar mToolbar;
+        private ViewFactory<? extends Toolbar> mToolbarFactory;
+        private View mExpandLayout;
+        private ViewFactory<? extends View> mExpandLayoutFactory;
+        private int mExpandLayoutInflation = INFLATE_EAGER;
+        private Drawable mCloseIcon;
+        private float mExpandMaxSize;
+        private long mExpandDuration = ExpandController.DEFAULT_DURATION;
+        private long mCollapseDuration = ExpandController.DEFAULT_DURATION;
+        private int mExpandAnimationMode = EXPAND_MODE_RESIZE;
+        private int mLayerPolicy = LAYER_POLICY_NONE;
+        private Drawable mContentScrim;
+        private int mTitleExpandStyle;
+        private int mTitleCollapseStyle;
+        private boolean mHideWhenTouchOutside = true;
+        private boolean mUseMaskView = true;
+        private int mScrimColor = Color.TRANSPARENT;
+        private boolean mDragToExpand = false;
+        private boolean mPrewarm = false;
+
+        /**
+         * Creates a builder
+         *
+         * @param context Context of the activity
+         */
+        public Builder(Context context) {
+            mContext = context;
+        }
 
-        post(new Runnable() {
-            @Override
-            public void run() {
-                // prepare elements
-                prepareHiding();
+        /**
+         * Sets the toolbar, already created
+         *
+         * @param toolbar The toolbar
+         * @return This builder
+         */
+        public Builder toolbar(Toolbar toolbar) {
+            mToolbar = toolbar;
+            return this;
+        }
+
+        /**
+         * Sets the factory of the toolbar
+         *
+         * @param factory Factory of the toolbar
+         * @return This builder
+         */
+        public Builder toolbar(ViewFactory<? extends Toolbar> factory) {
+            mToolbarFactory = factory;
+            return this;
+        }
+
+        /**
+         * Sets the expanded layout, already created
+         *
+         * @param layout The expanded layout
+         * @return This builder
+         */
+        public Builder expandLayout(View layout) {
+            mExpandLayout = layout;
+            return this;
+        }
+
+        /**
+         * Sets the factory of the expanded layout
+         *
+         * @param factory Factory of the expanded layout
+         * @return This builder
+         */
+        public Builder expandLayout(ViewFactory<? extends View> factory) {
+            mExpandLayoutFactory = factory;
+            return this;
+        }
+
+        /**
+         * Sets when the factory creates the expanded layout
+         *
+         * @param inflation {@link #INFLATE_EAGER} or {@link #INFLATE_LAZY}
+         * @return This builder
+         */
+        public Builder expandLayoutInflation(int inflation) {
+            mExpandLayoutInflation = inflation;
+            return this;
+        }
+
+        /**
+         * Sets the close icon
+         *
+         * @param drawable Drawable of icon
+         * @return This builder
+         */
+        public Builder closeIcon(Drawable drawable) {
+            mCloseIcon = drawable;
+            return this;
+        }
+
+        /**
+         * Sets the max size of the expanded layout
+         *
+         * @param size Height in pixels
+         * @return This builder
+         */
+        public Builder expandMaxSize(float size) {
+            mExpandMaxSize = size;
+            return this;
+        }
+
+        /**
+         * Sets the durations of the animations
+         *
+         * @param expandDuration Milliseconds of the expanding animation
+         * @param collapseDuration Milliseconds of the collapsing animation
+         * @return This builder
+         */
+        public Builder durations(long expandDuration, long collapseDuration) {
+            mExpandDuration = expandDuration;
+            mCollapseDuration = collapseDuration;
+            return this;
+        }
+
+        /**
+         * Sets the animation mode
+         *
+         * @param mode {@link #EXPAND_MODE_RESIZE} or {@link #EXPAND_MODE_REVEAL}
+         * @return This builder
+         */
+        public Builder expandAnimationMode(int mode) {
+            mExpandAnimationMode = mode;
+            return this;
+        }
+
+        /**
+         * Sets the layer policy during the transitions
+         *
+         * @param policy {@link #LAYER_POLICY_NONE} or {@link #LAYER_POLICY_TRANSITION}
+         * @return This builder
+         */
+        public Builder layerPolicy(int policy) {
+            mLayerPolicy = policy;
+            return this;
+        }
+
+        /**
+         * Sets the content scrim of the collapsingtoolbar
+         *
+         * @param drawable Drawable of content scrim
+         * @return This builder
+         */
+        public Builder contentScrim(Drawable drawable) {
+            mContentScrim = drawable;
+            return this;
+        }
+
+        /**
+         * Sets the title styles of the collapsingtoolbar
+         *
+         * @param expandStyle Style of the expanded title, 0 for the default
+         * @param collapseStyle Style of the collapsed title, 0 for the default
+         * @return This builder
+         */
+        public Builder titleStyles(int expandStyle, int collapseStyle) {
+            mTitleExpandStyle = expandStyle;
+            mTitleCollapseStyle = collapseStyle;
+            return this;
+        }
+
+        /**
+         * Sets if a touch outside hides the expanded layout
+         *
+         * @param hide Boolean to hide when the user touches outside
+         * @return This builder
+         */
+        public Builder hideWhenTouchOutside(boolean hide) {
+            mHideWhenTouchOutside = hide;
+            return this;
+        }
+
+        /**
+         * Sets the mask view usage
+         *
+         * @param useMaskView Boolean to use the mask view
+         * @return This builder
+         */
+        public Builder useMaskView(boolean useMaskView) {
+            mUseMaskView = useMaskView;
+            return this;
+        }
+
+        /**
+         * Sets the scrim color of the mask-free mode
+         *
+         * @param color Color of the scrim
+         * @return This builder
+         */
+        public Builder scrimColor(int color) {
+            mScrimColor = color;
+            return this;
+        }
+
+        /**
+         * Sets the drag mode
+         *
+         * @param dragToExpand Boolean to enable the drag mode
+         * @return This builder
+         */
+        public Builder dragToExpand(boolean dragToExpand) {
+            mDragToExpand = dragToExpand;
+            return this;
+        }
+
+        /**
+         * Sets the prewarm of the expanded layout when attached
+         *
+         * @param prewarm Boolean to prewarm
+         * @return This builder
+         */
+        public Builder prewarm(boolean prewarm) {
+            mPrewarm = prewarm;
+            return this;
+        }
 
-                // animate the height from current to the initial height
-                setCollapsedAndUnexpanded(AppBarrr.this, APPBAR_START_HEIGHT);
-                setCollapsedAndUnexpanded(mToolbar, TOOLBAR_START_HEIGHT);
+        /**
+         * Creates the widget
+         *
+         * @return The widget
+         */
+        public AppBarrr build() {
+            if (mToolbar == null && mToolbarFactory == null) {
+                throw new NullPointerException("The AppBarrr needs a toolbar, sets with \"toolbar()\"");
             }
-        });
+            if (mExpandLayout == null && mExpandLayoutFactory == null) {
+                throw new NullPointerException("The AppBarrr needs an expanded layout, sets with \"expandLayout()\"");
+            }
+            return new AppBarrr(this);
+        }
     }
 
     /**
@@ -863,10 +3274,19 @@ public class AppBarrr extends AppBarLayout {
     public Parcelable onSaveInstanceState() {
         Parcelable superState = super.onSaveInstanceState();
         SavedState ss = new SavedState(superState);
-        ss.childrenStates = new SparseArray();
+        SparseArray childrenStates = new SparseArray();
         for (int i = 0; i < getChildCount(); i++) {
-            getChildAt(i).saveHierarchyState(ss.childrenStates);
+            getChildAt(i).saveHierarchyState(childrenStates);
         }
+        // the views with an id and nothing to save give an empty
+        // state, which is not written
+        for (int i = childrenStates.size() - 1; i >= 0; i--) {
+            if (childrenStates.valueAt(i) == BaseSavedState.EMPTY_STATE) {
+                childrenStates.removeAt(i);
+            }
+        }
+        // only written if a child has a state
+        ss.childrenStates = childrenStates.size() > 0 ? childrenStates : null;
         ss.expanded = isExpanded();
         return ss;
     }
@@ -881,16 +3301,17 @@ public class AppBarrr extends AppBarLayout {
     public void onRestoreInstanceState(Parcelable state) {
         SavedState ss = (SavedState) state;
         super.onRestoreInstanceState(ss.getSuperState());
-        for (int i = 0; i < getChildCount(); i++) {
-            getChildAt(i).restoreHierarchyState(ss.childrenStates);
+        if (ss.childrenStates != null) {
+            for (int i = 0; i < getChildCount(); i++) {
+                getChildAt(i).restoreHierarchyState(ss.childrenStates);
+            }
         }
         if (ss.expanded) {
-            post(new Runnable() {
-                @Override
-                public void run() {
-                    restoreExpandedLayout();
-                }
-            });
+            // restored once the geometry is known, before the first draw
+            mRestorePending = true;
+            if (ViewCompat.isAttachedToWindow(this)) {
+                awaitPendingState();
+            }
         }
     }
 
@@ -904,8 +3325,12 @@ public class AppBarrr extends AppBarLayout {
         super.dispatchThawSelfOnly(container);
     }
 
+    /**
+     * State of the widget, the expanded flag and the states of
+     * the children if any
+     */
     @SuppressWarnings("unchecked")
-    public class SavedState extends BaseSavedState {
+    public static class SavedState extends BaseSavedState {
         SparseArray childrenStates;
         boolean expanded;
 
@@ -915,18 +3340,19 @@ public class AppBarrr extends AppBarLayout {
 
         private SavedState(Parcel in, ClassLoader classLoader) {
             super(in);
-            childrenStates = in.readSparseArray(classLoader);
             expanded = in.readInt() != 0;
+            // null if written empty
+            childrenStates = in.readSparseArray(classLoader);
         }
 
         @Override
         public void writeToParcel(Parcel out, int flags) {
             super.writeToParcel(out, flags);
+            out.writeInt(expanded ? 1 : 0);
             out.writeSparseArray(childrenStates);
-            out.writeInt(isExpanded() ? 1 : 0);
         }
 
-        public final ClassLoaderCreator<SavedState> CREATOR
+        public static final ClassLoaderCreator<SavedState> CREATOR
                 = new ClassLoaderCreator<SavedState>() {
             @Override
             public SavedState createFromParcel(Parcel source, ClassLoader loader) {
@@ -935,7 +3361,7 @@ public class AppBarrr extends AppBarLayout {
 
             @Override
             public SavedState createFromParcel(Parcel source) {
-                return createFromParcel(null);
+                return new SavedState(source, SavedState.class.getClassLoader());
             }
 
             public SavedState[] newArray(int size) {
@@ -944,24 +3370,145 @@ public class AppBarrr extends AppBarLayout {
         };
     }
 
+    /**
+     * Takes back the views offered to the pool when detached, or
+     * gets new ones if they were taken by another widget
+     */
+    private void reclaimViews() {
+        // toolbar
+        if (!ViewPool.reclaim(mToolbarRes, mToolbar)
+                && mToolbar.getParent() != mContainer) {
+            // taken by another widget, which doesn't get its transforms
+            removeTransforms(mToolbar);
+            setToolbar(mToolbarRes);
+            mContainer.addView(mToolbar, 0);
+            // associate toolbar with actionbar
+            if (activity instanceof AppCompatActivity) {
+                ((AppCompatActivity) activity).setSupportActionBar(mToolbar);
+            }
+            mTimeline = new ExpandTimeline(this, mToolbar);
+        }
+
+        // expanded layout
+        if (mExpandLayout != null
+                && !ViewPool.reclaim(mExpandLayoutRes, mExpandLayout)
+                && mExpandLayout.getParent() != mContainer) {
+            // taken by another widget, which doesn't get its
+            // transforms and its content
+            removeTransforms(mExpandLayout);
+            if (mContentBinding != null) {
+                mContentBinding.unbind();
+            }
+            setExpandLayout(mExpandLayoutRes);
+        }
+
+        // mask view, set in the first parent
+        if (mMaskView == null) {
+            setMaskView();
+        }
+        // mask view, moved with the widget to its new parent
+        if (mMaskView != null && mMaskView.getParent() != getParent()) {
+            if (mMaskView.getParent() != null) {
+                ((ViewGroup) mMaskView.getParent()).removeView(mMaskView);
+            }
+            ((ViewGroup) getParent()).addView(mMaskView);
+        }
+    }
+
+    /**
+     * Ends the running animation by setting its final
+     * geometry directly
+     */
+    private void finishTransition() {
+        boolean dragging = mController.isDragging();
+        if (!dragging && !mTimeline.isRunning() && !mSettling)
+            return;
+
+        if (dragging) {
+            mController.endDrag(false);
+        }
+
+        stopSettling();
+        mTimeline.cancel();
+        mController.onTransitionEnd();
+        setRevealHeight(-1, getHeight());
+        if (mController.isExpanded()) {
+            int maxHeight = getExpandMaxSize();
+            setFinalHeights(maxHeight, maxHeight);
+            mTimeline.jump();
+        } else {
+            hideExpandedViews();
+            setFinalHeights(mGeometry.getAppBarStartHeight(), mGeometry.getToolbarStartHeight());
+            mTimeline.jump();
+            removeScrim();
+        }
+        onTransitionEnd();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // views kept while detached
+        reclaimViews();
+        // geometry follows the size of the parent, which can be a new one
+        mObservedParent = (View) getParent();
+        mObservedParent.addOnLayoutChangeListener(mParentLayoutListener);
+        if (mObservedParent.getHeight() > 0) {
+            onParentResized(mObservedParent.getHeight());
+        }
+        if (mPrewarmOnAttach) {
+            prewarm();
+        }
+        // saved state restored before the attachment
+        if (mRestorePending) {
+            awaitPendingState();
+        }
+        if (mStagedInflater != null) {
+            mStagedInflater.resume();
+        }
+        // command received while detached
+        if (mCommandPending) {
+            Choreographer.getInstance().postFrameCallback(mCommandCallback);
+        }
+        // memory pressure
+        getContext().getApplicationContext().registerComponentCallbacks(mMemoryCallbacks);
+    }
+
     @Override
     public void onDetachedFromWindow() {
-        // listener
-        mCloseIcon.setOnClickListener(null);
-        // views
-        activity = null;
-        mContainer = null;
-        mExpandLayout = null;
-        mToolbar = null;
-        mMaskView = null;
-        mCloseIcon = null;
-        mUpIcon = null;
-        // ints
-        APPBAR_START_HEIGHT = 0;
-        TOOLBAR_START_HEIGHT = 0;
-        mExpandMaxSize = 0;
-        mExpandDuration = 0;
-        mCollapseDuration = 0;
+        // parent observer
+        if (mObservedParent != null) {
+            mObservedParent.removeOnLayoutChangeListener(mParentLayoutListener);
+            mObservedParent = null;
+        }
+        // memory pressure
+        getContext().getApplicationContext().unregisterComponentCallbacks(mMemoryCallbacks);
+        // pending restore, kept until attached again
+        getViewTreeObserver().removeOnPreDrawListener(mRestoreListener);
+        // pending command, kept until attached again
+        if (mCommandPending) {
+            Choreographer.getInstance().removeFrameCallback(mCommandCallback);
+        }
+        // prewarm and staged inflation
+        cancelPrewarm();
+        if (mStagedInflater != null) {
+            mStagedInflater.pause();
+        }
+        // animation, the widget is kept in a stable state
+        finishTransition();
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+        // views are kept to be attached again, and can be pooled
+        if (activity.isFinishing()) {
+            ViewPool.evict(activity);
+        } else if (!isExpanded() && !activity.isChangingConfigurations()) {
+            // a recreated activity inflates new views, the old ones
+            // would keep the destroyed activity in the pool
+            ViewPool.release(activity, mToolbarRes, mToolbar);
+            ViewPool.release(activity, mExpandLayoutRes, mExpandLayout);
+        }
         super.onDetachedFromWindow();
     }
 }
@@ -0,0 +1,154 @@
+package com.fllo.bars;
+
+import android.content.Context;
+import android.support.design.widget.AppBarLayout;
+import android.support.design.widget.CoordinatorLayout;
+import android.support.v4.view.ViewCompat;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * <h2>AppBarrrBehavior</h2>
+ * <p>The default behavior of {@link AppBarrr}, which locks the bar while the
+ * expanded layout is shown</p>
+ *
+ * <p>When the widget is expanded, the bar cannot be dragged nor scrolled by the
+ * nested scrolling child anymore, so the touches reach the expanded layout and its
+ * content stays scrollable. The nested scrolling child is found by its
+ * {@link AppBarLayout.ScrollingViewBehavior}, whatever its position in the parent.
+ * Nothing is done on the animation frames.</p>
+ *
+ * <p>In mask-free mode, the behavior also catches the touches outside the widget
+ * to hide its expanded layout, as the parent offers all its touches to the
+ * behaviors of its children.</p>
+ *
+ * @see android.support.design.widget.AppBarLayout.Behavior
+ */
+public class AppBarrrBehavior extends AppBarLayout.Behavior {
+
+    /**
+     * True if the current gesture started outside the expanded widget
+     */
+    private boolean mOutsideTouch;
+
+    public AppBarrrBehavior() {
+        super();
+        setDragCallback(new LockedDragCallback());
+    }
+
+    public AppBarrrBehavior(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        setDragCallback(new LockedDragCallback());
+    }
+
+    /**
+     * Returns true if the bar is locked by its expanded layout
+     *
+     * @param child The appbar
+     * @return Boolean of the locked state
+     */
+    private static boolean isLocked(AppBarLayout child) {
+        return child instanceof AppBarrr && ((AppBarrr) child).isExpanded();
+    }
+
+    /**
+     * Finds the nested scrolling child which follows the appbar
+     *
+     * @param parent The parent container
+     * @return The scrolling child, or null if not found
+     */
+    static View findScrollingChild(CoordinatorLayout parent) {
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            View child = parent.getChildAt(i);
+            CoordinatorLayout.Behavior<?> behavior =
+                    ((CoordinatorLayout.LayoutParams) child.getLayoutParams()).getBehavior();
+            // the mask view of the widget uses the same behavior
+            if (behavior instanceof AppBarLayout.ScrollingViewBehavior
+                    && child.getId() != R.id.layout_default_mask) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stops the nested scroll in progress, called when the bar is locked
+     *
+     * @param parent The parent container
+     */
+    void onLocked(CoordinatorLayout parent) {
+        View scrollingChild = findScrollingChild(parent);
+        if (scrollingChild != null) {
+            ViewCompat.stopNestedScroll(scrollingChild);
+        }
+    }
+
+    @Override
+    public boolean onStartNestedScroll(CoordinatorLayout parent, AppBarLayout child,
+                                       View directTargetChild, View target, int nestedScrollAxes) {
+        return !isLocked(child) && super.onStartNestedScroll(
+                parent, child, directTargetChild, target, nestedScrollAxes);
+    }
+
+    @Override
+    public void onNestedPreScroll(CoordinatorLayout coordinatorLayout, AppBarLayout child,
+                                  View target, int dx, int dy, int[] consumed) {
+        // a nested scroll started before locking
+        if (isLocked(child))
+            return;
+        super.onNestedPreScroll(coordinatorLayout, child, target, dx, dy, consumed);
+    }
+
+    @Override
+    public void onNestedScroll(CoordinatorLayout coordinatorLayout, AppBarLayout child,
+                               View target, int dxConsumed, int dyConsumed,
+                               int dxUnconsumed, int dyUnconsumed) {
+        if (isLocked(child))
+            return;
+        super.onNestedScroll(coordinatorLayout, child, target,
+                dxConsumed, dyConsumed, dxUnconsumed, dyUnconsumed);
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(CoordinatorLayout parent, AppBarLayout child,
+                                         MotionEvent ev) {
+        if (ev.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            mOutsideTouch = child instanceof AppBarrr
+                    && ((AppBarrr) child).isOutsideTouchIntercepted()
+                    && !parent.isPointInChildBounds(child, (int) ev.getX(), (int) ev.getY());
+        }
+        return mOutsideTouch || super.onInterceptTouchEvent(parent, child, ev);
+    }
+
+    @Override
+    public boolean onTouchEvent(CoordinatorLayout parent, AppBarLayout child, MotionEvent ev) {
+        if (!mOutsideTouch)
+            return super.onTouchEvent(parent, child, ev);
+
+        // consume the gesture, hide when released
+        switch (ev.getActionMasked()) {
+            case MotionEvent.ACTION_UP:
+                mOutsideTouch = false;
+                ((AppBarrr) child).hideExpandedLayout();
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                mOutsideTouch = false;
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Prevents dragging the bar while expanded, which lets
+     * the expanded content scroll, and in drag mode where
+     * the widget handles the drag itself
+     */
+    private static class LockedDragCallback extends DragCallback {
+        @Override
+        public boolean canDrag(AppBarLayout appBarLayout) {
+            return !isLocked(appBarLayout) && !(appBarLayout instanceof AppBarrr
+                    && ((AppBarrr) appBarLayout).isDragToExpandEnabled());
+        }
+    }
+}
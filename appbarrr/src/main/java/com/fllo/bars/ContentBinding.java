@@ -0,0 +1,147 @@
+package com.fllo.bars;
+
+import android.view.View;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <h2>ContentBinding</h2>
+ * <p>The content bound into the expanded layout of a widget by an
+ * {@link ExpandContentBinder}, with the prepared contents of the last keys</p>
+ *
+ * <p>The prepared contents are kept in access order and the least recently
+ * used are evicted. The binding remembers the key and the layout it was
+ * bound to, so binding them again does nothing.</p>
+ *
+ * @param <T> Type of the prepared content
+ */
+final class ContentBinding<T> {
+
+    /**
+     * Default number of prepared contents kept
+     */
+    static final int DEFAULT_CACHE_SIZE = 4;
+
+    private final ExpandContentBinder<T> mBinder;
+
+    /**
+     * Max number of prepared contents kept
+     */
+    private int mMaxSize = DEFAULT_CACHE_SIZE;
+
+    /**
+     * Prepared contents by key, in access order
+     */
+    private final LinkedHashMap<Object, T> mContents =
+            new LinkedHashMap<Object, T>(0, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, T> eldest) {
+            return size() > mMaxSize;
+        }
+    };
+
+    /**
+     * Key to display, null if not set
+     */
+    private Object mKey;
+
+    /**
+     * Key and layout of the last binding
+     */
+    private Object mBoundKey;
+    private View mBoundLayout;
+
+    /**
+     * Creates a binding
+     *
+     * @param binder Binder of the contents
+     */
+    ContentBinding(ExpandContentBinder<T> binder) {
+        mBinder = binder;
+    }
+
+    /**
+     * Sets the max number of prepared contents kept, the
+     * least recently used are evicted
+     *
+     * @param maxSize Max number of prepared contents, at least 1
+     */
+    void setMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The content cache size must be at least 1");
+        }
+        mMaxSize = maxSize;
+        while (mContents.size() > mMaxSize) {
+            mContents.remove(mContents.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Sets the key to display, its content is prepared now
+     * if not kept, to be bound once the layout is ready
+     *
+     * @param key Key of the content
+     */
+    void setKey(Object key) {
+        mKey = key;
+        if (key != null && !mContents.containsKey(key)) {
+            mContents.put(key, mBinder.prepare(key));
+        }
+    }
+
+    /**
+     * Binds the current content into the layout, if the
+     * same content is not already bound into it
+     *
+     * @param layout The expanded layout
+     */
+    void bindTo(View layout) {
+        if (mKey == null || layout == null)
+            return;
+        if (layout == mBoundLayout && mKey.equals(mBoundKey))
+            return;
+
+        T content = mContents.get(mKey);
+        if (content == null) {
+            // evicted meanwhile
+            content = mBinder.prepare(mKey);
+            mContents.put(mKey, content);
+        }
+        mBinder.bind(layout, content);
+        mBoundKey = mKey;
+        mBoundLayout = layout;
+    }
+
+    /**
+     * Drops the prepared content of a key, it is prepared
+     * and bound again when needed
+     *
+     * @param key Key of the content
+     */
+    void invalidate(Object key) {
+        mContents.remove(key);
+        if (key.equals(mBoundKey)) {
+            mBoundKey = null;
+            mBoundLayout = null;
+        }
+    }
+
+    /**
+     * Forgets the layout of the last binding, given to another
+     * widget, the content is bound again into the next one
+     */
+    void unbind() {
+        mBoundKey = null;
+        mBoundLayout = null;
+    }
+
+    /**
+     * Drops all the prepared contents
+     */
+    void clear() {
+        mContents.clear();
+        mBoundKey = null;
+        mBoundLayout = null;
+    }
+}
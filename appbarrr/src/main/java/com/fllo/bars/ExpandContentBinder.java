@@ -0,0 +1,37 @@
+package com.fllo.bars;
+
+import android.view.View;
+
+/**
+ * <h2>ExpandContentBinder</h2>
+ * <p>Binds a keyed content into the expanded layout of an {@link AppBarrr}</p>
+ *
+ * <p>The expensive work (formatting, lookups...) is done once per key by
+ * {@link #prepare(Object)}, and the prepared contents of the last keys are
+ * kept by the widget, so switching between a few items only has to
+ * {@link #bind(View, Object)} them. The same key is not bound twice in
+ * the same expanded layout.</p>
+ *
+ * @param <T> Type of the prepared content
+ * @see AppBarrr#setContentBinder(ExpandContentBinder)
+ * @see AppBarrr#bindContent(Object)
+ */
+public interface ExpandContentBinder<T> {
+    /**
+     * Prepares the content of a key, called once until the
+     * prepared content is evicted or invalidated
+     *
+     * @param key Key of the content, as given to the widget
+     * @return The prepared content
+     */
+    T prepare(Object key);
+
+    /**
+     * Binds a prepared content into the expanded layout, called once
+     * the layout is inflated
+     *
+     * @param expandLayout The expanded layout
+     * @param content The prepared content
+     */
+    void bind(View expandLayout, T content);
+}
@@ -0,0 +1,257 @@
+package com.fllo.bars;
+
+import android.animation.Animator;
+import android.animation.ValueAnimator;
+import android.view.View;
+
+import com.fllo.bars.core.ExpandTransition;
+
+/**
+ * <h2>ExpandTimeline</h2>
+ * <p>A single timeline shared by all the views which take part in an
+ * expanding or collapsing transition of an {@link AppBarrr}</p>
+ *
+ * <p>Every frame, the heights of all the participating views are updated
+ * in one pass and only one layout is requested, on the first target which
+ * must be the common ancestor of the other targets. The timeline can also
+ * run without moving its targets, the callback receiving the fraction only.</p>
+ *
+ * <p>The animator, its listeners and the heights are reused by all the
+ * animations, and the frames are computed from the primitive fraction:
+ * nothing is allocated once the timeline is created.</p>
+ */
+final class ExpandTimeline implements ValueAnimator.AnimatorUpdateListener,
+        Animator.AnimatorListener, ExpandTransition.Targets {
+
+    /**
+     * Callback invoked after each frame of the timeline
+     */
+    interface Callback {
+        /**
+         * Called once the targets have been moved for the current frame
+         *
+         * @param fraction Animated fraction, from 0 to 1
+         */
+        void onTimelineUpdate(float fraction);
+
+        /**
+         * Called when the timeline reaches its end, not called
+         * if the timeline is cancelled
+         */
+        void onTimelineEnd();
+    }
+
+    /**
+     * Views moved by the timeline, the first one is the root
+     */
+    private final View[] mTargets;
+
+    /**
+     * Heights of the targets, from their starting heights
+     * to their final heights
+     */
+    private final ExpandTransition mTransition;
+
+    /**
+     * Animator reused by all the animations
+     */
+    private final ValueAnimator mAnimator;
+
+    /**
+     * Final heights of the targets, staged before an animation
+     */
+    private final int[] mFinalHeights;
+
+    /**
+     * Frame callback of the running animation, null if not set
+     */
+    private Callback mCallback;
+
+    /**
+     * True if the running animation changes the targets height
+     */
+    private boolean mMoveTargets;
+
+    /**
+     * Creates a timeline for the given views
+     *
+     * @param targets Views to animate, the first one has to be the
+     *                ancestor of the others
+     */
+    ExpandTimeline(View... targets) {
+        mTargets = targets;
+        mTransition = new ExpandTransition(targets.length);
+        mFinalHeights = new int[targets.length];
+        // one animator and one set of listeners for all the animations
+        mAnimator = ValueAnimator.ofFloat(0.f, 1.f);
+        mAnimator.addUpdateListener(this);
+        mAnimator.addListener(this);
+    }
+
+    /**
+     * Sets the final height of a target, used by the next
+     * {@link #animate(long, Callback)} or {@link #jump()}
+     *
+     * @param index Index of the target
+     * @param height Final height
+     */
+    void setFinalHeight(int index, int height) {
+        mFinalHeights[index] = height;
+    }
+
+    /**
+     * Animates all the targets from their current heights
+     * to their final heights
+     *
+     * @param duration Milliseconds of the animation
+     * @param callback Frame callback, can be null
+     */
+    void animate(long duration, Callback callback) {
+        // never let two animators fight over the same views
+        cancel();
+
+        for (int i = 0; i < mTargets.length; i++) {
+            mTransition.set(i, getCurrentHeight(mTargets[i]), mFinalHeights[i]);
+        }
+
+        start(duration, callback, true);
+    }
+
+    /**
+     * Gets the height a target is moving to, which can be ahead
+     * of its laid out height when an animation is interrupted
+     *
+     * @param target View to measure
+     * @return Height in pixels
+     */
+    private static int getCurrentHeight(View target) {
+        int height = target.getLayoutParams().height;
+        return height >= 0 ? height : target.getHeight();
+    }
+
+    /**
+     * Runs the timeline without changing the targets height,
+     * the callback is in charge of the frame
+     *
+     * @param duration Milliseconds of the animation
+     * @param callback Frame callback
+     */
+    void run(long duration, Callback callback) {
+        cancel();
+        start(duration, callback, false);
+    }
+
+    /**
+     * Sets directly the final heights of the targets, without
+     * any animation and with only one layout request
+     */
+    void jump() {
+        cancel();
+
+        for (int i = 0; i < mTargets.length; i++) {
+            mTransition.set(i, mFinalHeights[i], mFinalHeights[i]);
+        }
+        moveTargets(1.f);
+    }
+
+    /**
+     * Starts the animator
+     *
+     * @param duration Milliseconds of the animation
+     * @param callback Frame callback, can be null
+     * @param moveTargets True if the targets height follows the animation
+     */
+    private void start(long duration, Callback callback, boolean moveTargets) {
+        mCallback = callback;
+        mMoveTargets = moveTargets;
+        mAnimator.setDuration(duration);
+        mAnimator.start();
+    }
+
+    /**
+     * Cancels the current animation, if any
+     */
+    void cancel() {
+        // no end callback for a cancelled animation
+        mCallback = null;
+        if (mAnimator.isStarted()) {
+            mAnimator.cancel();
+        }
+    }
+
+    /**
+     * Returns true if an animation is running
+     *
+     * @return Boolean of the running state
+     */
+    boolean isRunning() {
+        return mAnimator.isStarted();
+    }
+
+    @Override
+    public void onAnimationUpdate(ValueAnimator animation) {
+        update(animation.getAnimatedFraction());
+    }
+
+    /**
+     * Runs a frame of the animation: moves the targets if needed
+     * and calls the frame callback
+     *
+     * @param fraction Animated fraction, from 0 to 1
+     */
+    void update(float fraction) {
+        if (mMoveTargets) {
+            moveTargets(fraction);
+        }
+
+        if (mCallback != null) {
+            mCallback.onTimelineUpdate(fraction);
+        }
+    }
+
+    /**
+     * Sets the targets height for the given fraction
+     *
+     * @param fraction Animated fraction, from 0 to 1
+     */
+    private void moveTargets(float fraction) {
+        // one layout request per frame for all the targets
+        mTransition.apply(fraction, this);
+    }
+
+    @Override
+    public void setHeight(int index, int height) {
+        View target = mTargets[index];
+        target.getLayoutParams().height = height;
+        // only mark the children, the root request will reach them
+        if (index > 0) {
+            target.forceLayout();
+        }
+    }
+
+    @Override
+    public void requestLayout() {
+        mTargets[0].requestLayout();
+    }
+
+    @Override
+    public void onAnimationEnd(Animator animation) {
+        Callback callback = mCallback;
+        mCallback = null;
+        if (callback != null) {
+            callback.onTimelineEnd();
+        }
+    }
+
+    @Override
+    public void onAnimationStart(Animator animation) {
+    }
+
+    @Override
+    public void onAnimationCancel(Animator animation) {
+    }
+
+    @Override
+    public void onAnimationRepeat(Animator animation) {
+    }
+}
@@ -0,0 +1,173 @@
+package com.fllo.bars;
+
+import android.animation.TimeInterpolator;
+import android.view.View;
+
+/**
+ * <h2>ExpandTransform</h2>
+ * <p>A transform of a view attached to the transitions of an {@link AppBarrr}:
+ * alpha, translations and scale, interpolated over a range of the progress</p>
+ *
+ * <p>The transform is applied by the widget in the same frame which moves the bar,
+ * so the views of the expanded layout or of the toolbar can be staged without
+ * animators. Only the declared properties are set, they don't need a layout pass.
+ * For example, a view fading in on the first part of the expanding and another one
+ * sliding from the top:</p>
+ * <pre>
+ *     barrr.addExpandTransform(title, new ExpandTransform()
+ *             .range(0.f, 0.4f)
+ *             .alpha(0.f, 1.f));
+ *     barrr.addExpandTransform(header, new ExpandTransform()
+ *             .translationY(-header.getHeight(), 0.f));
+ * </pre>
+ *
+ * @see AppBarrr#addExpandTransform(View, ExpandTransform)
+ */
+public final class ExpandTransform {
+
+    private static final int ALPHA = 1;
+    private static final int TRANSLATION_X = 1 << 1;
+    private static final int TRANSLATION_Y = 1 << 2;
+    private static final int SCALE = 1 << 3;
+
+    /**
+     * Declared properties
+     */
+    private int mProperties;
+
+    /**
+     * Range of the progress, the transform is at its start
+     * before and at its end after
+     */
+    private float mRangeStart = 0.f;
+    private float mRangeEnd = 1.f;
+
+    /**
+     * Interpolator of the range, null if linear
+     */
+    private TimeInterpolator mInterpolator;
+
+    private float mAlphaFrom;
+    private float mAlphaTo;
+    private float mTranslationXFrom;
+    private float mTranslationXTo;
+    private float mTranslationYFrom;
+    private float mTranslationYTo;
+    private float mScaleFrom;
+    private float mScaleTo;
+
+    /**
+     * Sets the range of the progress in which the view is transformed,
+     * from 0 when collapsed to 1 when expanded (0..1 by default)
+     *
+     * @param start Progress where the transform starts
+     * @param end Progress where the transform ends
+     * @return This transform
+     */
+    public ExpandTransform range(float start, float end) {
+        if (start < 0.f || end > 1.f || start >= end) {
+            throw new IllegalArgumentException("The range must be in 0..1, start before end");
+        }
+        mRangeStart = start;
+        mRangeEnd = end;
+        return this;
+    }
+
+    /**
+     * Sets the interpolator of the range, linear by default
+     *
+     * @param interpolator Interpolator, null for linear
+     * @return This transform
+     */
+    public ExpandTransform interpolator(TimeInterpolator interpolator) {
+        mInterpolator = interpolator;
+        return this;
+    }
+
+    /**
+     * Sets the alpha of the view
+     *
+     * @param from Alpha when collapsed
+     * @param to Alpha when expanded
+     * @return This transform
+     */
+    public ExpandTransform alpha(float from, float to) {
+        mProperties |= ALPHA;
+        mAlphaFrom = from;
+        mAlphaTo = to;
+        return this;
+    }
+
+    /**
+     * Sets the horizontal translation of the view
+     *
+     * @param from Translation in pixels when collapsed
+     * @param to Translation in pixels when expanded
+     * @return This transform
+     */
+    public ExpandTransform translationX(float from, float to) {
+        mProperties |= TRANSLATION_X;
+        mTranslationXFrom = from;
+        mTranslationXTo = to;
+        return this;
+    }
+
+    /**
+     * Sets the vertical translation of the view
+     *
+     * @param from Translation in pixels when collapsed
+     * @param to Translation in pixels when expanded
+     * @return This transform
+     */
+    public ExpandTransform translationY(float from, float to) {
+        mProperties |= TRANSLATION_Y;
+        mTranslationYFrom = from;
+        mTranslationYTo = to;
+        return this;
+    }
+
+    /**
+     * Sets the scale of the view, on both axes
+     *
+     * @param from Scale when collapsed
+     * @param to Scale when expanded
+     * @return This transform
+     */
+    public ExpandTransform scale(float from, float to) {
+        mProperties |= SCALE;
+        mScaleFrom = from;
+        mScaleTo = to;
+        return this;
+    }
+
+    /**
+     * Applies the transform to a view for a progress of the widget
+     *
+     * @param view The transformed view
+     * @param progress Progress, from 0 when collapsed to 1 when expanded
+     */
+    void apply(View view, float progress) {
+        float fraction = (progress - mRangeStart) / (mRangeEnd - mRangeStart);
+        fraction = Math.max(0.f, Math.min(1.f, fraction));
+        if (mInterpolator != null) {
+            fraction = mInterpolator.getInterpolation(fraction);
+        }
+
+        if ((mProperties & ALPHA) != 0) {
+            view.setAlpha(mAlphaFrom + (mAlphaTo - mAlphaFrom) * fraction);
+        }
+        if ((mProperties & TRANSLATION_X) != 0) {
+            view.setTranslationX(mTranslationXFrom
+                    + (mTranslationXTo - mTranslationXFrom) * fraction);
+        }
+        if ((mProperties & TRANSLATION_Y) != 0) {
+            view.setTranslationY(mTranslationYFrom
+                    + (mTranslationYTo - mTranslationYFrom) * fraction);
+        }
+        if ((mProperties & SCALE) != 0) {
+            float scale = mScaleFrom + (mScaleTo - mScaleFrom) * fraction;
+            view.setScaleX(scale);
+            view.setScaleY(scale);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.fllo.bars;
+
+import android.view.Choreographer;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewStub;
+import android.widget.Space;
+
+import java.util.ArrayList;
+
+/**
+ * <h2>StagedInflater</h2>
+ * <p>Inflates the deferred parts of an expanded layout across several frames,
+ * within a time budget per frame</p>
+ *
+ * <p>The deferred parts are declared as {@link ViewStub}s in the expanded layout,
+ * so the top of the layout is inflated at once. Each stub is replaced by a
+ * {@link Space} with its layout params, which keeps its declared size, and the
+ * placeholders are replaced by their inflated layouts on the next frames. At least
+ * one placeholder is replaced per frame, the stubs found in an inflated layout are
+ * staged too.</p>
+ */
+final class StagedInflater implements Choreographer.FrameCallback {
+
+    private final LayoutInflater mInflater;
+
+    /**
+     * Called once all the stubs are inflated
+     */
+    private final Runnable mOnFinished;
+
+    /**
+     * Placeholders waiting for their layouts, in layout order
+     */
+    private final ArrayList<Space> mPlaceholders = new ArrayList<>();
+
+    /**
+     * Stubs replaced by the placeholders, which hold their layouts
+     */
+    private final ArrayList<ViewStub> mStubs = new ArrayList<>();
+
+    /**
+     * Time budget per frame in nanoseconds
+     */
+    private long mBudgetNanos;
+
+    /**
+     * True while a frame callback is posted
+     */
+    private boolean mPosted;
+
+    /**
+     * Creates a staged inflater
+     *
+     * @param inflater Inflater of the deferred layouts
+     * @param onFinished Called once all the stubs are inflated
+     */
+    StagedInflater(LayoutInflater inflater, Runnable onFinished) {
+        mInflater = inflater;
+        mOnFinished = onFinished;
+    }
+
+    /**
+     * Stages the stubs of a layout and starts inflating them
+     * on the next frames
+     *
+     * @param root Layout inflated at once
+     * @param budgetMillis Time budget per frame in milliseconds
+     */
+    void start(View root, long budgetMillis) {
+        mBudgetNanos = budgetMillis * 1000000L;
+        stage(root);
+        resume();
+    }
+
+    /**
+     * Posts the next frame if stubs are waiting
+     */
+    void resume() {
+        if (!mPosted && !mPlaceholders.isEmpty()) {
+            mPosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Stops inflating, the waiting stubs are kept for {@link #resume()}
+     */
+    void pause() {
+        if (mPosted) {
+            mPosted = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    /**
+     * Stops inflating and forgets the waiting stubs, when
+     * their layout is released
+     */
+    void cancel() {
+        pause();
+        mPlaceholders.clear();
+        mStubs.clear();
+    }
+
+    /**
+     * Inflates all the waiting stubs at once
+     */
+    void finish() {
+        pause();
+        if (mPlaceholders.isEmpty())
+            return;
+
+        while (!mPlaceholders.isEmpty()) {
+            inflateNext();
+        }
+        mOnFinished.run();
+    }
+
+    /**
+     * Returns true if stubs are waiting
+     *
+     * @return Boolean of the waiting state
+     */
+    boolean isPending() {
+        return !mPlaceholders.isEmpty();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mPosted = false;
+        long start = System.nanoTime();
+        do {
+            inflateNext();
+        } while (!mPlaceholders.isEmpty() && System.nanoTime() - start < mBudgetNanos);
+
+        if (mPlaceholders.isEmpty()) {
+            mOnFinished.run();
+        } else {
+            resume();
+        }
+    }
+
+    /**
+     * Replaces the stubs of a view by placeholders
+     *
+     * @param view View to stage
+     */
+    private void stage(View view) {
+        if (!(view instanceof ViewGroup))
+            return;
+
+        ViewGroup group = (ViewGroup) view;
+        for (int i = 0; i < group.getChildCount(); i++) {
+            View child = group.getChildAt(i);
+            if (child instanceof ViewStub) {
+                ViewStub stub = (ViewStub) child;
+                Space placeholder = new Space(view.getContext());
+                placeholder.setId(stub.getId());
+                group.removeViewAt(i);
+                group.addView(placeholder, i, stub.getLayoutParams());
+                mPlaceholders.add(placeholder);
+                mStubs.add(stub);
+            } else {
+                stage(child);
+            }
+        }
+    }
+
+    /**
+     * Replaces the first placeholder by its inflated layout
+     */
+    private void inflateNext() {
+        Space placeholder = mPlaceholders.remove(0);
+        ViewStub stub = mStubs.remove(0);
+
+        ViewGroup parent = (ViewGroup) placeholder.getParent();
+        // removed from its layout meanwhile
+        if (parent == null)
+            return;
+
+        View view = mInflater.inflate(stub.getLayoutResource(), parent, false);
+        if (stub.getInflatedId() != View.NO_ID) {
+            view.setId(stub.getInflatedId());
+        }
+        int index = parent.indexOfChild(placeholder);
+        parent.removeViewAt(index);
+        parent.addView(view, index, placeholder.getLayoutParams());
+        // nested stubs are staged too
+        stage(view);
+    }
+}
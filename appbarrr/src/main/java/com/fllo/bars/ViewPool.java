@@ -0,0 +1,257 @@
+package com.fllo.bars;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.os.Build;
+import android.os.Bundle;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <h2>ViewPool</h2>
+ * <p>A process-wide pool of the inflated toolbar and expanded layouts,
+ * keyed by layout resource id</p>
+ *
+ * <p>When a widget is detached, its views are offered to the pool while they
+ * remain its children. Another widget inflating the same layout in the same
+ * activity takes them instead of inflating again, whereas the first widget
+ * reclaims them if it is reattached before. The pool is bounded and evicts
+ * the least recently used layouts; it is disabled by default.</p>
+ *
+ * <p>A pooled view holds its activity, so the views of an activity are evicted
+ * when it is destroyed, and the views detached from a finishing or destroyed
+ * activity are not pooled. The pool only keeps a weak reference to the activity
+ * of each view: a destroyed activity's view is never given to another one.</p>
+ */
+final class ViewPool {
+
+    /**
+     * A pooled view and the activity which inflated it
+     */
+    private static final class Entry {
+        final View view;
+        final WeakReference<Activity> activity;
+
+        Entry(View view, Activity activity) {
+            this.view = view;
+            this.activity = new WeakReference<>(activity);
+        }
+    }
+
+    /**
+     * Pooled views by layout resource id, in access order
+     */
+    private static final LinkedHashMap<Integer, Entry> sViews =
+            new LinkedHashMap<Integer, Entry>(0, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+            return size() > sMaxSize;
+        }
+    };
+
+    /**
+     * Evicts the views of the destroyed activities, registered
+     * with the first pooled view
+     */
+    private static final Application.ActivityLifecycleCallbacks sLifecycleCallbacks =
+            new Application.ActivityLifecycleCallbacks() {
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            evict(activity);
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+    };
+
+    private static boolean sLifecycleRegistered = false;
+
+    /**
+     * Max number of pooled views, 0 if disabled
+     */
+    private static int sMaxSize = 0;
+
+    private ViewPool() {
+    }
+
+    /**
+     * Sets the max number of pooled views, 0 disables the pool
+     *
+     * @param maxSize Max number of views
+     */
+    static void setMaxSize(int maxSize) {
+        sMaxSize = Math.max(0, maxSize);
+        // evict the oldest ones
+        Iterator<Integer> it = sViews.keySet().iterator();
+        while (sViews.size() > sMaxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Returns true if the pool is enabled
+     *
+     * @return Boolean of the enabled state
+     */
+    static boolean isEnabled() {
+        return sMaxSize > 0;
+    }
+
+    /**
+     * Offers an inflated view to the pool
+     *
+     * @param activity Activity which inflated the view
+     * @param resId Id of layout resource
+     * @param view View inflated from the layout
+     */
+    static void release(Activity activity, int resId, View view) {
+        if (!isEnabled() || resId == 0 || view == null)
+            return;
+        // already evicted when destroyed, before its views are detached
+        if (isGone(activity))
+            return;
+
+        if (!sLifecycleRegistered) {
+            activity.getApplication().registerActivityLifecycleCallbacks(sLifecycleCallbacks);
+            sLifecycleRegistered = true;
+        }
+        sViews.put(resId, new Entry(view, activity));
+    }
+
+    /**
+     * Takes back a view offered to the pool by its owner
+     *
+     * @param resId Id of layout resource
+     * @param view View inflated from the layout
+     * @return True if the view was still in the pool
+     */
+    static boolean reclaim(int resId, View view) {
+        Entry entry = sViews.get(resId);
+        if (view != null && entry != null && entry.view == view) {
+            sViews.remove(resId);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Takes a view inflated in the same activity, detaching
+     * it from its previous parent
+     *
+     * @param activity Activity of the new owner
+     * @param resId Id of layout resource
+     * @return The pooled view, or null if none can be reused
+     */
+    static View acquire(Activity activity, int resId) {
+        prune();
+        Entry entry = sViews.remove(resId);
+        // views are tied to the activity which inflated them
+        if (entry == null || entry.activity.get() != activity
+                || getActivity(entry.view.getContext()) != activity)
+            return null;
+        View view = entry.view;
+        if (view.getParent() != null) {
+            ((ViewGroup) view.getParent()).removeView(view);
+        }
+        return view;
+    }
+
+    /**
+     * Evicts all the views inflated in an activity
+     *
+     * @param activity Activity which is finishing
+     */
+    static void evict(Activity activity) {
+        Iterator<Entry> it = sViews.values().iterator();
+        while (it.hasNext()) {
+            Activity owner = it.next().activity.get();
+            if (owner == null || owner == activity) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Evicts the views whose activity is gone, finishing or destroyed
+     */
+    private static void prune() {
+        Iterator<Entry> it = sViews.values().iterator();
+        while (it.hasNext()) {
+            Activity owner = it.next().activity.get();
+            if (owner == null || isGone(owner)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns true if an activity is finishing or destroyed, its
+     * views can't be given to another widget
+     *
+     * @param activity Activity of the views
+     * @return Boolean of the activity state
+     */
+    private static boolean isGone(Activity activity) {
+        return activity.isFinishing()
+                || (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+                && activity.isDestroyed());
+    }
+
+    /**
+     * Evicts all the views
+     */
+    static void clear() {
+        sViews.clear();
+    }
+
+    /**
+     * Gets the number of pooled views
+     *
+     * @return Number of views
+     */
+    static int size() {
+        return sViews.size();
+    }
+
+    /**
+     * Gets the context under the theme wrappers
+     *
+     * @param c Context of a view
+     * @return The activity or the base context
+     */
+    private static Context getActivity(Context c) {
+        while (c instanceof ContextWrapper && !(c instanceof Activity)) {
+            c = ((ContextWrapper) c).getBaseContext();
+        }
+        return c;
+    }
+}